@@ -0,0 +1,64 @@
+package com.wan.cropper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.wan.cropper.util.AspectRatioUtil;
+
+/**
+ * The aspect ratio arithmetic that a fixed aspect ratio drag does on every
+ * move.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AspectRatioBenchmark {
+
+    private static final float TARGET_ASPECT_RATIO = 4f / 3f;
+
+    private float[] mPoints;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mPoints = Gestures.grid();
+    }
+
+    @Benchmark
+    public float calculateAspectRatio() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        return AspectRatioUtil.calculateAspectRatio(0, 0, mPoints[mIndex], mPoints[Gestures.SAMPLE_COUNT + mIndex]);
+    }
+
+    @Benchmark
+    public float calculateLeft() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        return AspectRatioUtil.calculateLeft(0,
+                                             Gestures.BOUNDS_WIDTH,
+                                             mPoints[Gestures.SAMPLE_COUNT + mIndex],
+                                             TARGET_ASPECT_RATIO);
+    }
+
+    @Benchmark
+    public float calculateBottom() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        return AspectRatioUtil.calculateBottom(0, 0, mPoints[mIndex], TARGET_ASPECT_RATIO);
+    }
+
+    @Benchmark
+    public float calculateWidth() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        return AspectRatioUtil.calculateWidth(0, mPoints[Gestures.SAMPLE_COUNT + mIndex], TARGET_ASPECT_RATIO);
+    }
+}
@@ -0,0 +1,63 @@
+package com.wan.cropper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.edge.Edge;
+import com.wan.cropper.cropwindow.handle.Handle;
+
+/**
+ * The cost of moving a single edge to a touch point, snapped to the bounds
+ * and kept from making the window too small.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EdgeBenchmark {
+
+    @Param({ "LEFT", "TOP", "RIGHT", "BOTTOM" })
+    public Edge edge;
+
+    private CropWindow mWindow;
+    private float[] mPoints;
+    private int mIndex;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+
+        // The edge constraints are solved when a handle is pressed.
+        mWindow = Gestures.newWindow(false);
+        final float[] pressed = Gestures.press(mWindow, Handle.CENTER);
+        mPoints = Gestures.scatter(pressed[0], pressed[1]);
+        mIndex = 0;
+    }
+
+    @Benchmark
+    public float adjustCoordinate() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        edge.adjustCoordinate(mWindow, mPoints[mIndex], mPoints[Gestures.SAMPLE_COUNT + mIndex]);
+        return edge.getCoordinate(mWindow);
+    }
+
+    /**
+     * The second step of a fixed aspect ratio drag: the edge follows the
+     * other three.
+     */
+    @Benchmark
+    public float adjustCoordinateToAspectRatio() {
+
+        edge.adjustCoordinate(mWindow, mWindow.getTargetAspectRatio());
+        return edge.getCoordinate(mWindow);
+    }
+}
@@ -0,0 +1,430 @@
+package com.wan.cropper.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.edge.Edge;
+
+/**
+ * Replays recorded gestures through a CropWindow the way CropOverlayView
+ * applies touches, and reports the CPU time and the allocations per touch
+ * event and whether each gesture still ends with the recorded crop window.
+ * It also checks that the drag path of the crop window geometry does not
+ * allocate at all. Only CropWindow is covered: the Android side of a drag
+ * (CropOverlayView.onTouchEvent() and onDraw(), CropImageView and the tiles)
+ * does not run on a plain JVM and is not checked here.
+ * <p>
+ * Recordings are written on a device by the GestureRecorder of the sample app
+ * (see TestActivity). A recording is a text file of gestures, one line per
+ * item; lines starting with # are comments:
+ *
+ * <pre>
+ * bounds left top right bottom    the bounds of the crop window
+ * config snapRadius handleRadius aspectRatio
+ *                                 aspectRatio is 0 if it is not fixed
+ * window left top right bottom    the crop window before the gesture
+ * d time x y                      ACTION_DOWN; time in ms since the down
+ * m time x y                      one sample of an ACTION_MOVE
+ * u time x y                      ACTION_UP
+ * c time x y                      ACTION_CANCEL, or a second finger that
+ *                                 turns the drag into a pinch
+ * f time                          a frame; recorded from Jelly Bean on
+ * expect left top right bottom    the crop window after the gesture; optional
+ * </pre>
+ *
+ * Like CropOverlayView, a drag is applied once per frame with the last sample
+ * of that frame; on a cancel, the sample still waiting for its frame is
+ * dropped. The recorded frames are used where there are any. Otherwise the
+ * samples are grouped into 60 Hz frames by their time since the down. That
+ * is only an approximation of the device's vsync, so such a gesture may end
+ * slightly elsewhere than recorded.
+ * <p>
+ * The measured replays are split into rounds. The drag path counts as
+ * allocating if every round allocates more than reading the allocation
+ * counter does by itself. The JIT occasionally allocates a few hundred bytes
+ * on the thread it compiles for, but not in every round. Allocations
+ * can only be measured on JVMs that support
+ * com.sun.management.ThreadMXBean; elsewhere they are not checked.
+ * <p>
+ * Usage: <code>GestureReplay [-n replays] recording...</code>; exits with 1 if
+ * a gesture ends elsewhere than expected or the drag path allocates.
+ */
+public final class GestureReplay {
+
+    // The frame length the samples are grouped by if no frames were recorded,
+    // as on a 60 Hz display.
+    private static final float FRAME_MS = 1000f / 60;
+
+    // How far (in pixels) a crop window may be off the expected one.
+    private static final float TOLERANCE = 0.01f;
+
+    private static final int DEFAULT_REPLAYS = 2000;
+
+    // The measured replays are split into this many rounds.
+    private static final int ALLOCATION_ROUNDS = 5;
+
+    private static final byte DOWN = 'd';
+    private static final byte MOVE = 'm';
+    private static final byte UP = 'u';
+    private static final byte CANCEL = 'c';
+    private static final byte FRAME = 'f';
+
+    private GestureReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        int replays = DEFAULT_REPLAYS;
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                replays = Integer.parseInt(args[++i]);
+            } else {
+                files.add(new File(args[i]));
+            }
+        }
+
+        boolean passed = true;
+        for (File file : files) {
+            passed &= replay(file, readGestures(file), replays);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Checks the results of the gestures of a recording, then replays them
+     * over and over and prints their cost.
+     *
+     * @return whether every gesture ended as expected without allocating
+     */
+    private static boolean replay(File file, List<Gesture> gestures, int replays) {
+
+        final CropWindow window = new CropWindow();
+
+        boolean matches = true;
+        int events = 0;
+        for (int i = 0; i < gestures.size(); i++) {
+
+            final Gesture gesture = gestures.get(i);
+            gesture.replay(window);
+            events += gesture.eventCount;
+
+            if (gesture.expected == null) {
+                System.out.println(file.getName() + " gesture " + (i + 1) + ": " + format(window) + " (not checked)");
+            } else if (!gesture.isExpected(window)) {
+                System.out.println(file.getName() + " gesture " + (i + 1) + ": " + format(window) + ", expected "
+                                   + format(gesture.expected));
+                matches = false;
+            }
+        }
+
+        // The first half warms the JIT up; only the second half is measured.
+        for (int r = 0; r < replays / 2; r++) {
+            for (Gesture gesture : gestures) {
+                gesture.replay(window);
+            }
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final boolean measuresBytes = getAllocatedBytes(threads) >= 0;
+        final long overheadBytes = getAllocationOverhead(threads);
+        final int measuredReplays = replays - replays / 2;
+
+        final long startTime = threads.getCurrentThreadCpuTime();
+        long bytes = 0;
+        long minRoundBytes = Long.MAX_VALUE;
+
+        for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+
+            final long startBytes = getAllocatedBytes(threads);
+            final int end = (round + 1) * measuredReplays / ALLOCATION_ROUNDS;
+            for (int r = round * measuredReplays / ALLOCATION_ROUNDS; r < end; r++) {
+                for (int i = 0; i < gestures.size(); i++) {
+                    gestures.get(i).replay(window);
+                }
+            }
+
+            final long roundBytes = getAllocatedBytes(threads) - startBytes;
+            bytes += roundBytes;
+            minRoundBytes = Math.min(minRoundBytes, roundBytes);
+        }
+
+        final long time = threads.getCurrentThreadCpuTime() - startTime;
+        final long replayedEvents = (long) events * measuredReplays;
+        final boolean allocates = measuresBytes && minRoundBytes > overheadBytes;
+
+        System.out.println(String.format(Locale.US,
+                                         "%s: %d gestures, %d events, %.1f ns CPU and %s bytes per event, %s, %s",
+                                         file.getName(),
+                                         gestures.size(),
+                                         events,
+                                         (double) time / replayedEvents,
+                                         measuresBytes ? String.format(Locale.US, "%.2f", (double) bytes / replayedEvents) : "?",
+                                         matches ? "results match" : "RESULTS DIFFER",
+                                         !measuresBytes ? "allocations not checked"
+                                                 : allocates ? "DRAG PATH ALLOCATES" : "allocation-free"));
+        return matches && !allocates;
+    }
+
+    /**
+     * Gets how many bytes reading the allocation counter twice allocates by
+     * itself, at best.
+     */
+    private static long getAllocationOverhead(ThreadMXBean threads) {
+
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < ALLOCATION_ROUNDS; i++) {
+            final long startBytes = getAllocatedBytes(threads);
+            overhead = Math.min(overhead, getAllocatedBytes(threads) - startBytes);
+        }
+        return overhead;
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far, where the JVM
+     * can tell.
+     *
+     * @return the bytes, or -1 if unknown
+     */
+    private static long getAllocatedBytes(ThreadMXBean threads) {
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static List<Gesture> readGestures(File file) throws IOException {
+
+        final List<Gesture> gestures = new ArrayList<Gesture>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            Gesture gesture = new Gesture();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+
+                final String[] fields = line.split("\\s+");
+                final String type = fields[0];
+
+                // A gesture ends with the window it ended with or, if that was
+                // not recorded, with its up or cancel.
+                if (gesture.isComplete() && !type.equals("expect")) {
+                    gestures.add(gesture.check(file));
+                    gesture = new Gesture();
+                }
+
+                try {
+                    if (type.equals("bounds")) {
+                        gesture.bounds = parseFloats(fields, 4);
+                    } else if (type.equals("config")) {
+                        gesture.config = parseFloats(fields, 3);
+                    } else if (type.equals("window")) {
+                        gesture.window = parseFloats(fields, 4);
+                    } else if (type.equals("expect")) {
+                        gesture.expected = parseFloats(fields, 4);
+                    } else if (type.equals("f")) {
+                        gesture.add(FRAME, parseFloats(fields, 1)[0], 0, 0);
+                    } else if (type.length() == 1 && "dmuc".indexOf(type.charAt(0)) >= 0) {
+                        final float[] sample = parseFloats(fields, 3);
+                        gesture.add((byte) type.charAt(0), sample[0], sample[1], sample[2]);
+                    } else {
+                        throw new IOException("Unknown item \"" + type + "\"");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+
+                if (type.equals("expect")) {
+                    gestures.add(gesture.check(file));
+                    gesture = new Gesture();
+                }
+            }
+            if (gesture.size > 0) {
+                gestures.add(gesture.check(file));
+            }
+        } finally {
+            reader.close();
+        }
+        return gestures;
+    }
+
+    private static float[] parseFloats(String[] fields, int count) throws IOException {
+
+        if (fields.length != count + 1) {
+            throw new IOException("Expected " + count + " values after \"" + fields[0] + "\"");
+        }
+        final float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Float.parseFloat(fields[i + 1]);
+        }
+        return values;
+    }
+
+    private static String format(CropWindow window) {
+        return format(new float[] { window.getLeft(), window.getTop(), window.getRight(), window.getBottom() });
+    }
+
+    private static String format(float[] rect) {
+        return String.format(Locale.US, "[%.2f, %.2f, %.2f, %.2f]", rect[0], rect[1], rect[2], rect[3]);
+    }
+
+    // Gestures ////////////////////////////////////////////////////////////////
+
+    /**
+     * One recorded gesture, from ACTION_DOWN to ACTION_UP or ACTION_CANCEL,
+     * held in arrays so that replaying it only costs what the crop window
+     * does.
+     */
+    private static final class Gesture {
+
+        float[] bounds;
+        float[] config;
+        float[] window;
+        float[] expected;
+
+        byte[] types = new byte[64];
+        float[] times = new float[64];
+        float[] xs = new float[64];
+        float[] ys = new float[64];
+        int size;
+
+        // The number of touch samples, i.e. the items that are not frames.
+        int eventCount;
+
+        // Whether the frames were recorded, rather than guessed from the time.
+        boolean hasFrames;
+
+        void add(byte type, float time, float x, float y) {
+
+            if (size == types.length) {
+                final int capacity = size * 2;
+                final byte[] newTypes = new byte[capacity];
+                System.arraycopy(types, 0, newTypes, 0, size);
+                types = newTypes;
+                times = copyOf(times, capacity);
+                xs = copyOf(xs, capacity);
+                ys = copyOf(ys, capacity);
+            }
+            types[size] = type;
+            times[size] = time;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+            if (type == FRAME) {
+                hasFrames = true;
+            } else {
+                eventCount++;
+            }
+        }
+
+        boolean isComplete() {
+            return size > 0 && (types[size - 1] == UP || types[size - 1] == CANCEL);
+        }
+
+        Gesture check(File file) throws IOException {
+
+            if (bounds == null || config == null || window == null) {
+                throw new IOException(file + ": a gesture lacks its bounds, config or window");
+            }
+            if (size == 0 || types[0] != DOWN) {
+                throw new IOException(file + ": a gesture does not start with a down");
+            }
+            return this;
+        }
+
+        /**
+         * Sets the window up as it was recorded and plays the samples through
+         * it, once per frame like CropOverlayView: on each recorded frame or,
+         * without any, whenever a sample falls into the next 60 Hz frame.
+         */
+        void replay(CropWindow cropWindow) {
+
+            cropWindow.release();
+            cropWindow.setBounds(bounds[0], bounds[1], bounds[2], bounds[3]);
+            cropWindow.setSnapRadius(config[0]);
+            cropWindow.setFixedAspectRatio(config[2] > 0);
+            if (config[2] > 0) {
+                cropWindow.setTargetAspectRatio(config[2]);
+            }
+            cropWindow.set(window[0], window[1], window[2], window[3]);
+
+            final float handleRadius = config[1];
+            boolean pending = false;
+            int pendingFrame = 0;
+            float pendingX = 0;
+            float pendingY = 0;
+
+            for (int i = 0; i < size; i++) {
+                switch (types[i]) {
+                    case DOWN:
+                        pending = false;
+                        cropWindow.press(xs[i], ys[i], handleRadius);
+                        break;
+                    case FRAME:
+                        if (pending) {
+                            cropWindow.drag(pendingX, pendingY);
+                            pending = false;
+                        }
+                        break;
+                    case MOVE:
+                        final int frame = (int) (times[i] / FRAME_MS);
+                        if (pending && !hasFrames && frame != pendingFrame) {
+                            cropWindow.drag(pendingX, pendingY);
+                        }
+                        pending = true;
+                        pendingFrame = frame;
+                        pendingX = xs[i];
+                        pendingY = ys[i];
+                        break;
+                    case UP:
+                        // The window ends up where the last move was, not
+                        // where the finger was lifted.
+                        if (pending) {
+                            cropWindow.drag(pendingX, pendingY);
+                            pending = false;
+                        }
+                        cropWindow.release();
+                        break;
+                    default:
+                        // A cancelled drag drops the sample still waiting
+                        // for its frame.
+                        pending = false;
+                        cropWindow.release();
+                        break;
+                }
+            }
+        }
+
+        boolean isExpected(CropWindow cropWindow) {
+            return Math.abs(cropWindow.getCoordinate(Edge.LEFT) - expected[0]) <= TOLERANCE
+                   && Math.abs(cropWindow.getCoordinate(Edge.TOP) - expected[1]) <= TOLERANCE
+                   && Math.abs(cropWindow.getCoordinate(Edge.RIGHT) - expected[2]) <= TOLERANCE
+                   && Math.abs(cropWindow.getCoordinate(Edge.BOTTOM) - expected[3]) <= TOLERANCE;
+        }
+
+        private static float[] copyOf(float[] array, int length) {
+            final float[] copy = new float[length];
+            System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.wan.cropper.benchmark;
+
+import java.util.Random;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.handle.Handle;
+
+/**
+ * The setup shared by the benchmarks: a crop window over a phone-sized image,
+ * and reproducible touch points for it.
+ */
+final class Gestures {
+
+    // The image bounds, roughly a 3:4 photo fitted to a 1080p screen.
+    static final float BOUNDS_WIDTH = 1080;
+    static final float BOUNDS_HEIGHT = 1440;
+
+    // Typical values of CropOverlayView on an xxhdpi screen.
+    static final float SNAP_RADIUS = 9;
+    static final float TARGET_RADIUS = 72;
+
+    // The number of touch points a benchmark cycles through; a power of two.
+    static final int SAMPLE_COUNT = 256;
+
+    // How far the touch points stray from where the handle was pressed.
+    private static final float JITTER = 120;
+
+    private Gestures() {
+    }
+
+    /**
+     * Creates a crop window over the bounds, reset to its initial size.
+     */
+    static CropWindow newWindow(boolean fixedAspectRatio) {
+
+        final CropWindow window = new CropWindow();
+        window.setBounds(0, 0, BOUNDS_WIDTH, BOUNDS_HEIGHT);
+        window.setSnapRadius(SNAP_RADIUS);
+        window.setFixedAspectRatio(fixedAspectRatio);
+        window.setTargetAspectRatio(4f / 3f);
+        window.reset();
+        return window;
+    }
+
+    /**
+     * Presses the given handle of the window.
+     *
+     * @return the point that was pressed, as {x, y}
+     * @throws IllegalStateException if the handle cannot be hit
+     */
+    static float[] press(CropWindow window, Handle handle) {
+
+        for (float y = 0; y <= BOUNDS_HEIGHT; y += 4) {
+            for (float x = 0; x <= BOUNDS_WIDTH; x += 4) {
+                if (window.getHandleAt(x, y, TARGET_RADIUS) == handle) {
+                    window.press(x, y, TARGET_RADIUS);
+                    return new float[] { x, y };
+                }
+            }
+        }
+        throw new IllegalStateException("No point hits " + handle + " of " + window);
+    }
+
+    /**
+     * Gets touch points scattered around the given point, the same on every
+     * run.
+     *
+     * @return the x-coordinates followed by the y-coordinates
+     */
+    static float[] scatter(float x, float y) {
+
+        final Random random = new Random(SAMPLE_COUNT);
+        final float[] points = new float[2 * SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            points[i] = x + (random.nextFloat() * 2 - 1) * JITTER;
+            points[SAMPLE_COUNT + i] = y + (random.nextFloat() * 2 - 1) * JITTER;
+        }
+        return points;
+    }
+
+    /**
+     * Gets touch points spread evenly over the bounds.
+     *
+     * @return the x-coordinates followed by the y-coordinates
+     */
+    static float[] grid() {
+
+        final int side = (int) Math.sqrt(SAMPLE_COUNT);
+        final float[] points = new float[2 * SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            points[i] = (i % side + 0.5f) * BOUNDS_WIDTH / side;
+            points[SAMPLE_COUNT + i] = (i / side + 0.5f) * BOUNDS_HEIGHT / side;
+        }
+        return points;
+    }
+}
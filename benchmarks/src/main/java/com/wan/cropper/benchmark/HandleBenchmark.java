@@ -0,0 +1,56 @@
+package com.wan.cropper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.handle.Handle;
+
+/**
+ * The cost of one ACTION_MOVE of a drag: moving the pressed handle, which
+ * goes through the handle helper and the edges, with and without a fixed
+ * aspect ratio.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandleBenchmark {
+
+    @Param({ "TOP_LEFT", "TOP_RIGHT", "BOTTOM_LEFT", "BOTTOM_RIGHT",
+             "LEFT", "TOP", "RIGHT", "BOTTOM", "CENTER" })
+    public Handle handle;
+
+    @Param({ "false", "true" })
+    public boolean fixedAspectRatio;
+
+    private CropWindow mWindow;
+    private float[] mPoints;
+    private int mIndex;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+
+        mWindow = Gestures.newWindow(fixedAspectRatio);
+
+        final float[] pressed = Gestures.press(mWindow, handle);
+        mPoints = Gestures.scatter(pressed[0], pressed[1]);
+        mIndex = 0;
+    }
+
+    @Benchmark
+    public CropWindow drag() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        mWindow.drag(mPoints[mIndex], mPoints[Gestures.SAMPLE_COUNT + mIndex]);
+        return mWindow;
+    }
+}
@@ -0,0 +1,41 @@
+package com.wan.cropper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.handle.Handle;
+
+/**
+ * The cost of an ACTION_DOWN: finding the handle under the finger, for points
+ * all over the image, most of which miss the window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitTestBenchmark {
+
+    private CropWindow mWindow;
+    private float[] mPoints;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mWindow = Gestures.newWindow(false);
+        mPoints = Gestures.grid();
+    }
+
+    @Benchmark
+    public Handle getHandleAt() {
+
+        mIndex = (mIndex + 1) & (Gestures.SAMPLE_COUNT - 1);
+        return mWindow.getHandleAt(mPoints[mIndex], mPoints[Gestures.SAMPLE_COUNT + mIndex], Gestures.TARGET_RADIUS);
+    }
+}
@@ -1,29 +1,57 @@
 package com.wan.cropper;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.GestureDetector;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
-import android.view.ViewGroup;
+
 import android.widget.FrameLayout;
 import android.widget.ImageView;
+import android.widget.OverScroller;
 
 import com.wan.cropper.R;
 import com.wan.cropper.cropwindow.CropOverlayView;
-import com.wan.cropper.cropwindow.edge.Edge;
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.image.BackgroundTask;
+import com.wan.cropper.image.BitmapHandle;
+import com.wan.cropper.image.BitmapPool;
+import com.wan.cropper.image.ImageSource;
+import com.wan.cropper.image.MemorySizingPolicy;
+import com.wan.cropper.image.SizingPolicy;
+import com.wan.cropper.tile.TiledImageView;
+import com.wan.cropper.util.BitmapUtil;
 import com.wan.cropper.util.ImageViewUtil;
+import com.wan.cropper.util.TraceUtil;
 
 public class CropImageView extends FrameLayout {
 
+    private static final String TAG = CropImageView.class.getSimpleName();
+
     private static final Rect EMPTY_RECT = new Rect();
 
     // Sets the default image guidelines to show when resizing
@@ -35,15 +63,109 @@ public class CropImageView extends FrameLayout {
     private static final int DEFAULT_IMAGE_RESOURCE = 0;
 
     private static final String DEGREES_ROTATED = "DEGREES_ROTATED";
+    private static final String FLIPPED_HORIZONTALLY = "FLIPPED_HORIZONTALLY";
+    private static final String CROP_RECT = "CROP_RECT";
+
+    // How far the image may be zoomed in: one source pixel is drawn at most
+    // this many view pixels wide.
+    private static final float MAX_ZOOM_PIXEL_SCALE = 4f;
+
+    // The largest Bitmap every device can draw with hardware acceleration,
+    // assumed until the real limit is known from the first draw.
+    private static final int DEFAULT_MAX_BITMAP_SIZE = 2048;
 
     private ImageView mImageView;
     private CropOverlayView mCropOverlayView;
 
+    // The displayed Bitmap, and the reference this view holds on it. The
+    // reference is released as soon as the image is replaced or cleared;
+    // Bitmaps this view allocated (decoded, scaled) then go back to the
+    // BitmapPool unless the Bitmap is still shared. Bitmaps supplied by the
+    // caller are never recycled.
     private Bitmap mBitmap;
+    private BitmapHandle mBitmapHandle;
+
+    // The orientation of the image on screen: mirrored first (if flipped),
+    // then rotated clockwise. mBitmap itself is never rotated; the
+    // orientation is part of mDisplayMatrix and applied to the crop only.
     private int mDegreesRotated = 0;
+    private boolean mFlipHorizontally;
+
+    // Maps mBitmap pixels to view pixels: orientation, center-inside, then
+    // the zoom.
+    private final Matrix mDisplayMatrix = new Matrix();
+
+    // Kept so that measuring, zooming and reading the crop do not allocate:
+    // the center-inside rect of the image, the display matrix scaled to
+    // source pixels for the tiles, and a scratch matrix for mapping the crop.
+    // mBitmapRect is only recomputed when one of the sizes it was computed
+    // for changes.
+    private final Rect mBitmapRect = new Rect();
+    private int mBitmapRectImageWidth;
+    private int mBitmapRectImageHeight;
+    private int mBitmapRectViewWidth;
+    private int mBitmapRectViewHeight;
+    private final Matrix mTileMatrix = new Matrix();
+    private final Matrix mCropMatrix = new Matrix();
+
+    // The zoom and pan of the image behind the crop window, in view pixels.
+    // The image is only ever scaled up from where it was fitted, and always
+    // covers that rect, so the crop window bounds stay the same.
+    private final Matrix mZoomMatrix = new Matrix();
+    private final float[] mMatrixValues = new float[9];
+    private final RectF mFittedImageRect = new RectF();
+    private final RectF mZoomedImageRect = new RectF();
+    private boolean mZoomEnabled = true;
+
+    private ScaleGestureDetector mScaleDetector;
+    private GestureDetector mGestureDetector;
+    private OverScroller mScroller;
+
+    // Whether the current gesture moves the image rather than the crop window.
+    private boolean mImageGesture;
+
+    // The scroller position applied by the last step of a fling.
+    private int mFlingX;
+    private int mFlingY;
+
+    private final Runnable mFlingStep = new Runnable() {
+        @Override
+        public void run() {
+            if (mScroller.computeScrollOffset()) {
+                final int x = mScroller.getCurrX();
+                final int y = mScroller.getCurrY();
+                panBy(x - mFlingX, y - mFlingY);
+                mFlingX = x;
+                mFlingY = y;
+                postOnNextFrame(this);
+            }
+        }
+    };
 
-    private int mLayoutWidth;
-    private int mLayoutHeight;
+    // The crop window relative to the size of mBitmap (0 to 1, before
+    // orientation), to be put back once the display matrix has been updated
+    // for a new orientation, or once a restored image has been laid out.
+    private RectF mPendingCropRect;
+
+    private BitmapPool mBitmapPool = BitmapPool.getDefault();
+
+    // Chooses the sample size and config of the displayed image and of crops,
+    // within the largest Bitmap the Canvas can draw.
+    private SizingPolicy mSizingPolicy;
+    private int mMaxBitmapWidth = DEFAULT_MAX_BITMAP_SIZE;
+    private int mMaxBitmapHeight = DEFAULT_MAX_BITMAP_SIZE;
+
+    // The encoded original behind mBitmap, or null if the Bitmap was supplied
+    // directly by the caller. mBitmap may be subsampled; the source dimensions
+    // are the full-resolution size of the original.
+    private ImageSource mImageSource;
+    private int mSourceWidth;
+    private int mSourceHeight;
+
+    // The caller's Bitmap at full resolution when mBitmap is only a proxy of
+    // it, scaled to the screen for display; null otherwise. Like the
+    // ImageSource it is only read to crop.
+    private BitmapHandle mSourceBitmapHandle;
 
     // Instance variables for customizable attributes
     private int mGuidelines = DEFAULT_GUIDELINES;
@@ -52,6 +174,138 @@ public class CropImageView extends FrameLayout {
     private int mAspectRatioY = DEFAULT_ASPECT_RATIO_Y;
     private int mImageResource = DEFAULT_IMAGE_RESOURCE;
 
+    // The decode in progress; null when no image is loading.
+    private BackgroundTask<Bitmap> mLoadTask;
+    private Drawable mPlaceholder;
+    private OnImageLoadListener mOnImageLoadListener;
+    private OnCropSavedListener mOnCropSavedListener;
+    private CropMetrics mCropMetrics;
+
+    // Draws full-resolution tiles of the visible area over the preview.
+    private TiledImageView mTiledImageView;
+    private boolean mTiledRendering = true;
+
+    // Whether the image and the tiles are drawn into hardware layers, so that
+    // dragging the crop window only recomposites the image.
+    private boolean mLayerIsolation = true;
+
+
+    /**
+     * Interface definition for callbacks invoked when an image set through
+     * {@link CropImageView#setImageSource(ImageSource)} (or one of the methods
+     * built on it) has been loaded.
+     */
+    public interface OnImageLoadListener {
+
+        /**
+         * Called once the image is displayed and the crop window is ready.
+         */
+        void onImageLoaded(CropImageView view);
+
+        /**
+         * Called when the image could not be read or decoded.
+         */
+        void onImageLoadFailed(CropImageView view, Exception error);
+    }
+
+    /**
+     * Interface definition for callbacks invoked when a crop started with one
+     * of the saveCroppedImage() methods has been written.
+     */
+    public interface OnCropSavedListener {
+
+        /**
+         * Called once the cropped image has been written completely.
+         */
+        void onCropSaved(CropImageView view, Uri uri);
+
+        /**
+         * Called when the crop could not be decoded, encoded or written.
+         */
+        void onCropSaveFailed(CropImageView view, Exception error);
+    }
+
+    /**
+     * Interface definition for callbacks reporting how long the expensive
+     * stages of a CropImageView take, and how much they allocate. All the
+     * callbacks are invoked on the main thread. The same stages are marked
+     * as sections in systrace from Jelly Bean MR2 on.
+     */
+    public interface CropMetrics {
+
+        /**
+         * Called when an image has been decoded for display.
+         * 
+         * @param durationNanos the time spent decoding, in the background
+         * @param byteCount the size of the decoded Bitmap
+         */
+        void onImageDecoded(long durationNanos, int byteCount);
+
+        /**
+         * Called when one of the getCroppedImage() methods has returned a crop.
+         * 
+         * @param durationNanos the time spent cropping, on the main thread
+         * @param byteCount the size of the cropped Bitmap
+         */
+        void onImageCropped(long durationNanos, int byteCount);
+
+        /**
+         * Called when a crop started with one of the saveCroppedImage()
+         * methods has been written.
+         * 
+         * @param durationNanos the time spent decoding, encoding and writing
+         *            the crop, in the background
+         * @param byteCount the size of the cropped Bitmap that was encoded
+         */
+        void onCropSaved(long durationNanos, int byteCount);
+
+        /**
+         * Called after the crop window has been drawn.
+         * 
+         * @param durationNanos the time spent in onDraw()
+         */
+        void onCropWindowDrawn(long durationNanos);
+
+        /**
+         * Called when a drag of the crop window ends.
+         * 
+         * @param frameCount the number of frames the crop window was moved in
+         * @param droppedFrameCount the number of frames a touch waited for
+         *            beyond the first
+         * @param maxLatencyMillis the longest time from a touch to the frame
+         *            it was applied in
+         */
+        void onDragFinished(int frameCount, int droppedFrameCount, long maxLatencyMillis);
+    }
+
+    /**
+     * The decoded image of a CropImageView, kept across a configuration
+     * change (e.g. from {@link android.app.Activity#onRetainNonConfigurationInstance()})
+     * so that the new view can show it without decoding it again. Get it with
+     * {@link CropImageView#retainImage()} and hand it to
+     * {@link CropImageView#setRetainedImage(RetainedImage)}, once; the
+     * orientation and the crop window are restored with the view's saved
+     * state. It holds its own references on the ImageSource and the Bitmaps,
+     * so the old view may release its image meanwhile.
+     */
+    public static final class RetainedImage {
+
+        // Null if the image was still loading; the new view then decodes it.
+        private final BitmapHandle mBitmapHandle;
+        private final BitmapHandle mSourceBitmapHandle;
+        private final ImageSource mImageSource;
+        private final int mSourceWidth;
+        private final int mSourceHeight;
+
+        private RetainedImage(CropImageView view) {
+            mBitmapHandle = view.mBitmapHandle != null ? view.mBitmapHandle.acquire() : null;
+            mSourceBitmapHandle = view.mSourceBitmapHandle != null ? view.mSourceBitmapHandle.acquire() : null;
+            mImageSource = view.mImageSource != null ? view.mImageSource.acquire() : null;
+            mSourceWidth = view.mSourceWidth;
+            mSourceHeight = view.mSourceHeight;
+        }
+    }
+
     public CropImageView(Context context) {
         super(context);
         init(context);
@@ -83,6 +337,13 @@ public class CropImageView extends FrameLayout {
 
         bundle.putParcelable("instanceState", super.onSaveInstanceState());
         bundle.putInt(DEGREES_ROTATED, mDegreesRotated);
+        bundle.putBoolean(FLIPPED_HORIZONTALLY, mFlipHorizontally);
+
+        // Relative to the image, so that it fits a decode of another size.
+        final RectF cropRect = mPendingCropRect != null ? mPendingCropRect : getNormalizedCropRect();
+        if (cropRect != null) {
+            bundle.putParcelable(CROP_RECT, cropRect);
+        }
 
         return bundle;
 
@@ -95,12 +356,18 @@ public class CropImageView extends FrameLayout {
 
             final Bundle bundle = (Bundle) state;
 
-            if (mBitmap != null) {
-                mDegreesRotated = bundle.getInt(DEGREES_ROTATED);
-                int tempDegrees = mDegreesRotated;
-                rotateImage(mDegreesRotated);
-                mDegreesRotated = tempDegrees;
+            // Only a transform, so it applies equally to an image that is
+            // still loading.
+            mDegreesRotated = bundle.getInt(DEGREES_ROTATED);
+            mFlipHorizontally = bundle.getBoolean(FLIPPED_HORIZONTALLY);
+
+            // Put back on the next layout with an image, which may still be
+            // loading.
+            final RectF cropRect = bundle.getParcelable(CROP_RECT);
+            if (cropRect != null) {
+                mPendingCropRect = cropRect;
             }
+            requestLayout();
 
             super.onRestoreInstanceState(bundle.getParcelable("instanceState"));
 
@@ -109,14 +376,34 @@ public class CropImageView extends FrameLayout {
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+
+        super.onAttachedToWindow();
+
+        // Restart a load that was cancelled when the view was detached.
+        if (mBitmap == null && mImageSource != null && mLoadTask == null) {
+            startLoad();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+
+        cancelLoad();
+        stopFling();
+
+        super.onDetachedFromWindow();
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
 
+        // The zoom is relative to where the image was fitted.
+        clearZoom();
+
         if (mBitmap != null) {
-            final Rect bitmapRect = ImageViewUtil.getBitmapRectCenterInside(mBitmap, this);
-            mCropOverlayView.setBitmapRect(bitmapRect);
-        } else {
-            mCropOverlayView.setBitmapRect(EMPTY_RECT);
+            updateBitmapRect(w, h);
         }
     }
 
@@ -130,65 +417,130 @@ public class CropImageView extends FrameLayout {
 
         if (mBitmap != null) {
 
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            // Measure the image as it is displayed, i.e. with its sides
+            // swapped when it is rotated sideways.
+            final int bitmapWidth = getOrientedBitmapWidth();
+            final int bitmapHeight = getOrientedBitmapHeight();
+
             if (heightSize == 0)
-                heightSize = mBitmap.getHeight();
+                heightSize = bitmapHeight;
             int desiredWidth;
             int desiredHeight;
             double viewToBitmapWidthRatio = Double.POSITIVE_INFINITY;
             double viewToBitmapHeightRatio = Double.POSITIVE_INFINITY;
-            if (widthSize < mBitmap.getWidth()) {
-                viewToBitmapWidthRatio = (double) widthSize / (double) mBitmap.getWidth();
+            if (widthSize < bitmapWidth) {
+                viewToBitmapWidthRatio = (double) widthSize / (double) bitmapWidth;
             }
-            if (heightSize < mBitmap.getHeight()) {
-                viewToBitmapHeightRatio = (double) heightSize / (double) mBitmap.getHeight();
+            if (heightSize < bitmapHeight) {
+                viewToBitmapHeightRatio = (double) heightSize / (double) bitmapHeight;
             }
 
             if (viewToBitmapWidthRatio != Double.POSITIVE_INFINITY || viewToBitmapHeightRatio != Double.POSITIVE_INFINITY) {
                 if (viewToBitmapWidthRatio <= viewToBitmapHeightRatio) {
                     desiredWidth = widthSize;
-                    desiredHeight = (int) (mBitmap.getHeight() * viewToBitmapWidthRatio);
+                    desiredHeight = (int) (bitmapHeight * viewToBitmapWidthRatio);
                 } else {
                     desiredHeight = heightSize;
-                    desiredWidth = (int) (mBitmap.getWidth() * viewToBitmapHeightRatio);
+                    desiredWidth = (int) (bitmapWidth * viewToBitmapHeightRatio);
                 }
             }else {
-                desiredWidth = mBitmap.getWidth();
-                desiredHeight = mBitmap.getHeight();
+                desiredWidth = bitmapWidth;
+                desiredHeight = bitmapHeight;
             }
 
-            int width = getOnMeasureSpec(widthMode, widthSize, desiredWidth);
-            int height = getOnMeasureSpec(heightMode, heightSize, desiredHeight);
-
-            mLayoutWidth = width;
-            mLayoutHeight = height;
+            final int width = getOnMeasureSpec(widthMode, widthSize, desiredWidth);
+            final int height = getOnMeasureSpec(heightMode, heightSize, desiredHeight);
 
-            final Rect bitmapRect = ImageViewUtil.getBitmapRectCenterInside(mBitmap.getWidth(),
-                                                                            mBitmap.getHeight(),
-                                                                            mLayoutWidth,
-                                                                            mLayoutHeight);
-            mCropOverlayView.setBitmapRect(bitmapRect);
+            updateBitmapRect(width, height);
 
-            // MUST CALL THIS
-            setMeasuredDimension(mLayoutWidth, mLayoutHeight);
+            // The children fill exactly the size chosen for the image, which
+            // also becomes the measured size. The layout params are left
+            // alone, so that measuring again gives the same result.
+            super.onMeasure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                            MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
 
         } else {
 
-            mCropOverlayView.setBitmapRect(EMPTY_RECT);
+            // Still measure the children so the placeholder can be shown.
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            clearBitmapRect();
             setMeasuredDimension(widthSize, heightSize);
         }
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+
+        // The texture size limit of the GPU; a software Canvas has none worth
+        // knowing about.
+        if (canvas.isHardwareAccelerated()) {
+            mMaxBitmapWidth = canvas.getMaximumBitmapWidth();
+            mMaxBitmapHeight = canvas.getMaximumBitmapHeight();
+        }
+
+        super.dispatchDraw(canvas);
+    }
+
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
 
         super.onLayout(changed, l, t, r, b);
 
-        if (mLayoutWidth > 0 && mLayoutHeight > 0) {
-            final ViewGroup.LayoutParams origparams = this.getLayoutParams();
-            origparams.width = mLayoutWidth;
-            origparams.height = mLayoutHeight;
-            setLayoutParams(origparams);
+        updateDisplayMatrix();
+
+        // Put back the crop window of an orientation change or of the saved
+        // state, now that the bitmap rect is known.
+        if (mPendingCropRect != null && mBitmap != null) {
+            final RectF cropRect = new RectF(mPendingCropRect.left * mBitmap.getWidth(),
+                                             mPendingCropRect.top * mBitmap.getHeight(),
+                                             mPendingCropRect.right * mBitmap.getWidth(),
+                                             mPendingCropRect.bottom * mBitmap.getHeight());
+            mPendingCropRect = null;
+            mDisplayMatrix.mapRect(cropRect);
+            mCropOverlayView.setCropWindowRect(cropRect);
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mImageGesture = false;
+            stopFling();
+        }
+
+        final boolean handled = super.dispatchTouchEvent(event);
+
+        // The detectors see every event, including those the crop window
+        // takes, so they have a consistent view of the gesture once it turns
+        // into a pinch; they only act on it once mImageGesture is set.
+        if (mZoomEnabled && mBitmap != null) {
+            mScaleDetector.onTouchEvent(event);
+            mGestureDetector.onTouchEvent(event);
+        }
+        return handled;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event) {
+
+        // A second finger turns a drag of the crop window into a pinch of the
+        // image; the crop window gets ACTION_CANCEL.
+        if (mZoomEnabled && mBitmap != null && event.getPointerCount() > 1) {
+            mImageGesture = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+
+        // Only reached by touches the crop window did not take.
+        if (mZoomEnabled && mBitmap != null) {
+            mImageGesture = true;
+            return true;
         }
+        return super.onTouchEvent(event);
     }
 
     //  //////////////////////////////////////////////////////////
@@ -202,12 +554,19 @@ public class CropImageView extends FrameLayout {
      */
     public void setImageBitmap(Bitmap bitmap) {
 
-        mBitmap = bitmap;
-        mImageView.setImageBitmap(mBitmap);
+        takeImageBitmap(bitmap != null ? BitmapHandle.wrap(bitmap) : null);
+    }
 
-        if (mCropOverlayView != null) {
-            mCropOverlayView.resetCropOverlayView();
-        }
+    /**
+     * Shows a Bitmap that may be shared with other views or tasks, without
+     * copying it. The view takes its own reference, and releases it when it
+     * is given another image or cleared.
+     * 
+     * @param handle the Bitmap; the caller keeps its own reference
+     */
+    public void setImageBitmap(BitmapHandle handle) {
+
+        takeImageBitmap(handle != null ? handle.acquire() : null);
     }
 
     /**
@@ -224,35 +583,45 @@ public class CropImageView extends FrameLayout {
             return;
         }
 
-        final Matrix matrix = new Matrix();
+        // The Bitmap is kept as it is and displayed through the orientation.
+        // It stays the caller's; the view never recycles it.
+        takeImageBitmap(BitmapHandle.wrap(bitmap));
+
         final int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 1);
-        int rotate = -1;
 
         switch (orientation) {
-            case ExifInterface.ORIENTATION_ROTATE_270:
-                rotate = 270;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                mFlipHorizontally = true;
+                mDegreesRotated = 0;
                 break;
             case ExifInterface.ORIENTATION_ROTATE_180:
-                rotate = 180;
+                mFlipHorizontally = false;
+                mDegreesRotated = 180;
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                mFlipHorizontally = true;
+                mDegreesRotated = 180;
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                mFlipHorizontally = true;
+                mDegreesRotated = 270;
                 break;
             case ExifInterface.ORIENTATION_ROTATE_90:
-                rotate = 90;
+                mFlipHorizontally = false;
+                mDegreesRotated = 90;
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                mFlipHorizontally = true;
+                mDegreesRotated = 90;
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                mFlipHorizontally = false;
+                mDegreesRotated = 270;
+                break;
+            default:
+                mFlipHorizontally = false;
+                mDegreesRotated = 0;
                 break;
-        }
-
-        if (rotate == -1) {
-            setImageBitmap(bitmap);
-        } else {
-            matrix.postRotate(rotate);
-            final Bitmap rotatedBitmap = Bitmap.createBitmap(bitmap,
-                                                             0,
-                                                             0,
-                                                             bitmap.getWidth(),
-                                                             bitmap.getHeight(),
-                                                             matrix,
-                                                             true);
-            setImageBitmap(rotatedBitmap);
-            bitmap.recycle();
         }
     }
 
@@ -261,193 +630,1623 @@ public class CropImageView extends FrameLayout {
      */
     public void setImageResource(int resId) {
         if (resId != 0) {
-            Bitmap bitmap = BitmapFactory.decodeResource(getResources(), resId);
-            setImageBitmap(bitmap);
+            setImageSource(ImageSource.fromResource(getResources(), resId));
         }
     }
 
     /**
-     * زüͼƬ
+     * Sets the image from a content, file or android.resource Uri. The image is
+     * decoded subsampled to the size of this view and the Uri is kept as the
+     * source of the full-resolution pixels.
+     * 
+     * @param uri the Uri of the image
      */
-    public Bitmap getCroppedImage() {
+    public void setImageUri(Uri uri) {
+        setImageSource(ImageSource.fromUri(getContext(), uri));
+    }
 
-        final Rect displayedImageRect = ImageViewUtil.getBitmapRectCenterInside(mBitmap, mImageView);
-
-        // Get the scale factor between the actual Bitmap dimensions and the
-        // displayed dimensions for width.
-        final float actualImageWidth = mBitmap.getWidth();
-        final float displayedImageWidth = displayedImageRect.width();
-        final float scaleFactorWidth = actualImageWidth / displayedImageWidth;
-
-        // Get the scale factor between the actual Bitmap dimensions and the
-        // displayed dimensions for height.
-        final float actualImageHeight = mBitmap.getHeight();
-        final float displayedImageHeight = displayedImageRect.height();
-        final float scaleFactorHeight = actualImageHeight / displayedImageHeight;
-
-        // Get crop window position relative to the displayed image.
-        final float cropWindowX = Edge.LEFT.getCoordinate() - displayedImageRect.left;
-        final float cropWindowY = Edge.TOP.getCoordinate() - displayedImageRect.top;
-        final float cropWindowWidth = Edge.getWidth();
-        final float cropWindowHeight = Edge.getHeight();
-
-        // Scale the crop window position to the actual size of the Bitmap.
-        final float actualCropX = cropWindowX * scaleFactorWidth;
-        final float actualCropY = cropWindowY * scaleFactorHeight;
-        final float actualCropWidth = cropWindowWidth * scaleFactorWidth;
-        final float actualCropHeight = cropWindowHeight * scaleFactorHeight;
-
-        // Crop the subset from the original Bitmap.
-        final Bitmap croppedBitmap = Bitmap.createBitmap(mBitmap,
-                                                         (int) actualCropX,
-                                                         (int) actualCropY,
-                                                         (int) actualCropWidth,
-                                                         (int) actualCropHeight);
+    /**
+     * Sets the image from a file. The image is decoded subsampled to the size
+     * of this view and the file is kept as the source of the full-resolution
+     * pixels.
+     * 
+     * @param file the image file
+     */
+    public void setImageFile(File file) {
+        setImageSource(ImageSource.fromFile(file));
+    }
 
-        return croppedBitmap;
+    /**
+     * Sets the image from a stream. The stream is copied to the cache directory
+     * so that it can be read again for the crop, and is closed afterwards.
+     * 
+     * @param stream the stream of the encoded image
+     */
+    public void setImageStream(InputStream stream) {
+        setImageSource(ImageSource.fromStream(getContext(), stream));
     }
 
     /**
-     * Gets the crop window's position relative to the source Bitmap (not the image
-     * displayed in the CropImageView).
+     * Sets the image from an ImageSource. The image is decoded on a background
+     * thread: only the header is read at full size, and the pixels are decoded
+     * with a sample size chosen from the size of this view (or the screen, if
+     * the view has not been measured yet), so the displayed Bitmap is never
+     * bigger than it needs to be. Until it arrives the placeholder is shown and
+     * the crop window is hidden. A load that is still running is cancelled.
      * 
-     * @return a RectF instance containing cropped area boundaries of the source Bitmap
+     * @param source the encoded image; owned by this view from now on
      */
-    public RectF getActualCropRect() {
+    public void setImageSource(ImageSource source) {
+
+        cancelLoad();
+        setImageSource(source, 0, 0);
+        setSourceBitmap(null);
+        mDegreesRotated = 0;
+        mFlipHorizontally = false;
+        mPendingCropRect = null;
+        setDisplayBitmap(null);
+
+        if (source != null) {
+            startLoad();
+        }
+    }
 
-        final Rect displayedImageRect = ImageViewUtil.getBitmapRectCenterInside(mBitmap, mImageView);
+    /**
+     * Removes the image and releases it: the ImageSource, and this view's
+     * references on its Bitmaps. Call it when the view is no longer needed,
+     * e.g. from Activity.onDestroy(), to free the memory right away rather
+     * than when the view is garbage collected.
+     */
+    public void clearImage() {
+        setImageSource((ImageSource) null);
+    }
 
-        // Get the scale factor between the actual Bitmap dimensions and the
-        // displayed dimensions for width.
-        final float actualImageWidth = mBitmap.getWidth();
-        final float displayedImageWidth = displayedImageRect.width();
-        final float scaleFactorWidth = actualImageWidth / displayedImageWidth;
+    /**
+     * Hands the image over for a configuration change. The returned image
+     * takes its own references, so this view keeps its image, and can still
+     * crop it, until it is cleared with {@link #clearImage()}.
+     * 
+     * @return the image to pass to the new view's
+     *         {@link #setRetainedImage(RetainedImage)}, or null if there is
+     *         none
+     */
+    public RetainedImage retainImage() {
 
-        // Get the scale factor between the actual Bitmap dimensions and the
-        // displayed dimensions for height.
-        final float actualImageHeight = mBitmap.getHeight();
-        final float displayedImageHeight = displayedImageRect.height();
-        final float scaleFactorHeight = actualImageHeight / displayedImageHeight;
+        if (mBitmap == null && mImageSource == null) {
+            return null;
+        }
 
-        // Get crop window position relative to the displayed image.
-        final float displayedCropLeft = Edge.LEFT.getCoordinate() - displayedImageRect.left;
-        final float displayedCropTop = Edge.TOP.getCoordinate() - displayedImageRect.top;
-        final float displayedCropWidth = Edge.getWidth();
-        final float displayedCropHeight = Edge.getHeight();
+        // A load in progress is started again by the new view.
+        cancelLoad();
 
-        // Scale the crop window position to the actual size of the Bitmap.
-        float actualCropLeft = displayedCropLeft * scaleFactorWidth;
-        float actualCropTop = displayedCropTop * scaleFactorHeight;
-        float actualCropRight = actualCropLeft + displayedCropWidth * scaleFactorWidth;
-        float actualCropBottom = actualCropTop + displayedCropHeight * scaleFactorHeight;
+        return new RetainedImage(this);
+    }
 
-        // Correct for floating point errors. Crop rect boundaries should not
-        // exceed the source Bitmap bounds.
-        actualCropLeft = Math.max(0f, actualCropLeft);
-        actualCropTop = Math.max(0f, actualCropTop);
-        actualCropRight = Math.min(mBitmap.getWidth(), actualCropRight);
-        actualCropBottom = Math.min(mBitmap.getHeight(), actualCropBottom);
+    /**
+     * Shows an image retained from the view that this one replaces, without
+     * decoding it again. The saved state restores the orientation and the crop
+     * window on top of it, just like it does for an image that is decoded.
+     * 
+     * @param image the image returned by {@link #retainImage()}; owned by this
+     *            view from now on
+     */
+    public void setRetainedImage(RetainedImage image) {
+
+        if (image.mBitmapHandle == null) {
+            setImageSource(image.mImageSource);
+            return;
+        }
 
-        final RectF actualCropRect = new RectF(actualCropLeft,
-                                               actualCropTop,
-                                               actualCropRight,
-                                               actualCropBottom);
+        cancelLoad();
+        setImageSource(image.mImageSource, image.mSourceWidth, image.mSourceHeight);
+        setSourceBitmap(image.mSourceBitmapHandle);
+        mDegreesRotated = 0;
+        mFlipHorizontally = false;
+        mPendingCropRect = null;
+        setDisplayBitmap(image.mBitmapHandle);
 
-        return actualCropRect;
+        if (mTiledRendering && mImageSource != null) {
+            startTiledRendering();
+        }
     }
 
     /**
-     * Sets whether the aspect ratio is fixed or not; true fixes the aspect ratio, while
-     * false allows it to be changed.
+     * Sets the Drawable shown while an image is being loaded.
      * 
-     * @param fixAspectRatio Boolean that signals whether the aspect ratio should be
-     *            maintained.
+     * @param placeholder the placeholder; null to show nothing
      */
-    public void setFixedAspectRatio(boolean fixAspectRatio) {
-        mCropOverlayView.setFixedAspectRatio(fixAspectRatio);
+    public void setPlaceholder(Drawable placeholder) {
+
+        mPlaceholder = placeholder;
+
+        if (isLoading()) {
+            mImageView.setImageDrawable(mPlaceholder);
+        }
     }
 
     /**
-     * Sets the guidelines for the CropOverlayView to be either on, off, or to show when
-     * resizing the application.
+     * Sets the listener notified when an image set through one of the loading
+     * methods has been decoded, or has failed to decode.
      * 
-     * @param guidelines Integer that signals whether the guidelines should be on, off, or
-     *            only showing when resizing.
+     * @param listener the listener; null to remove it
      */
-    public void setGuidelines(int guidelines) {
-        mCropOverlayView.setGuidelines(guidelines);
+    public void setOnImageLoadListener(OnImageLoadListener listener) {
+        mOnImageLoadListener = listener;
     }
 
     /**
-     * Sets the both the X and Y values of the aspectRatio.
+     * Returns whether an image is still being decoded in the background.
+     */
+    public boolean isLoading() {
+        return mLoadTask != null;
+    }
+
+    /**
+     * Sets whether the parts of a large image that are visible are drawn from
+     * full-resolution tiles when they are displayed larger than the preview.
+     * On by default.
      * 
-     * @param aspectRatioX int that specifies the new X value of the aspect ratio
-     * @param aspectRatioX int that specifies the new Y value of the aspect ratio
+     * @param tiledRendering true to draw tiles over the preview
      */
-    public void setAspectRatio(int aspectRatioX, int aspectRatioY) {
-        mAspectRatioX = aspectRatioX;
-        mCropOverlayView.setAspectRatioX(mAspectRatioX);
+    public void setTiledRenderingEnabled(boolean tiledRendering) {
 
-        mAspectRatioY = aspectRatioY;
-        mCropOverlayView.setAspectRatioY(mAspectRatioY);
+        mTiledRendering = tiledRendering;
+
+        if (!mTiledRendering) {
+            mTiledImageView.clear();
+        } else if (mBitmap != null && mImageSource != null) {
+            startTiledRendering();
+            updateDisplayMatrix();
+        }
     }
 
     /**
-     * Rotates image by the specified number of degrees clockwise. Cycles from 0 to 360
-     * degrees.
+     * Sets whether the image and its tiles are each rendered into their own
+     * hardware layer. The image is then only re-rendered when it changes
+     * (e.g. it is rotated or new tiles arrive), so dragging the crop window
+     * just redraws the window and recomposites the cached image. The crop
+     * window itself changes on every frame of a drag and is never put in a
+     * layer. The layers take about twice the View's size in texture memory.
+     * On by default; turning it off is mainly useful to measure the
+     * difference.
      * 
-     * @param degrees Integer specifying the number of degrees to rotate.
+     * @param layerIsolation true to use hardware layers
      */
-    public void rotateImage(int degrees) {
+    public void setLayerIsolationEnabled(boolean layerIsolation) {
+        mLayerIsolation = layerIsolation;
+        updateLayerTypes();
+    }
 
-        Matrix matrix = new Matrix();
-        matrix.postRotate(degrees);
-        mBitmap = Bitmap.createBitmap(mBitmap, 0, 0, mBitmap.getWidth(), mBitmap.getHeight(), matrix, true);
-        setImageBitmap(mBitmap);
+    public boolean isLayerIsolationEnabled() {
+        return mLayerIsolation;
+    }
 
-        mDegreesRotated += degrees;
-        mDegreesRotated = mDegreesRotated % 360;
+    /**
+     * Gets the ImageSource the current image was decoded from.
+     * 
+     * @return the source, or null if the image was set as a Bitmap
+     */
+    public ImageSource getImageSource() {
+        return mImageSource;
     }
 
-    // Private Methods /////////////////////////////////////////////////////////
+    /**
+     * Sets the pool that decoded, rotated and cropped Bitmaps are taken from
+     * and that replaced Bitmaps and evicted tiles are returned to. By default
+     * a pool shared by all CropImageViews is used.
+     * 
+     * @param pool the pool; null to always allocate new Bitmaps
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+        mTiledImageView.setBitmapPool(pool);
+    }
 
-    private void init(Context context) {
+    /**
+     * Gets the BitmapPool used by this view, e.g. to read its hit and miss
+     * counts when tuning its size.
+     * 
+     * @return the pool, or null if pooling is disabled
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
 
-        final LayoutInflater inflater = LayoutInflater.from(context);
-        final View v = inflater.inflate(R.layout.crop_image_view, this, true);
+    /**
+     * زüͼƬ
+     * <p>
+     * The crop is at full resolution unless it has more pixels than the
+     * {@link SizingPolicy#getMaxCropPixels()} of this view's policy; it is
+     * then scaled down to that many, keeping its aspect ratio. With the
+     * default {@link MemorySizingPolicy} that is as many as fit half the
+     * memory class of the app, or half the free heap, as ARGB_8888.
+     * 
+     * @return the cropped image, or null if the image is still loading
+     */
+    public Bitmap getCroppedImage() {
+        return cropImage(0, 0, false);
+    }
 
-        mImageView = (ImageView) v.findViewById(R.id.ImageView_image);
+    /**
+     * Gets the cropped image scaled down to fit within the given size, keeping
+     * its aspect ratio; it is never scaled up. The crop is decoded from the
+     * original with the largest sample size that still covers the output and
+     * then scaled and oriented in a single pass, so no full-resolution copy of
+     * the crop is made. It is kept within the same number of pixels as
+     * {@link #getCroppedImage()}.
+     * 
+     * @param maxWidth the maximum width of the result
+     * @param maxHeight the maximum height of the result
+     * @return the cropped image, or null if the image is still loading
+     */
+    public Bitmap getCroppedImage(int maxWidth, int maxHeight) {
 
-        setImageResource(mImageResource);
-        mCropOverlayView = (CropOverlayView) v.findViewById(R.id.CropOverlayView);
-        mCropOverlayView.setInitialAttributeValues(mGuidelines, mFixAspectRatio, mAspectRatioX, mAspectRatioY);
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Cannot crop to a size less than or equal to 0.");
+        }
+        return cropImage(maxWidth, maxHeight, false);
     }
 
     /**
-     * Determines the specs for the onMeasure function. Calculates the width or height
-     * depending on the mode.
+     * Gets the cropped image scaled to exactly the given size, e.g. 1080x1920
+     * for a crop window fixed at 9:16. A size with another aspect ratio than
+     * the crop window stretches the image. Decoded like
+     * {@link #getCroppedImage(int, int)}.
      * 
-     * @param measureSpecMode The mode of the measured width or height.
-     * @param measureSpecSize The size of the measured width or height.
-     * @param desiredSize The desired size of the measured width or height.
-     * @return The final size of the width or height.
+     * @param width the width of the result
+     * @param height the height of the result
+     * @return the cropped image, or null if the image is still loading
      */
-    private static int getOnMeasureSpec(int measureSpecMode, int measureSpecSize, int desiredSize) {
+    public Bitmap getCroppedImageExact(int width, int height) {
 
-        // Measure Width
-        int spec;
-        if (measureSpecMode == MeasureSpec.EXACTLY) {
-            // Must be this size
-            spec = measureSpecSize;
-        } else if (measureSpecMode == MeasureSpec.AT_MOST) {
-            // Can't be bigger than...; match_parent value
-            spec = Math.min(desiredSize, measureSpecSize);
-        } else {
-            // Be whatever you want; wrap_content
-            spec = desiredSize;
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Cannot crop to a size less than or equal to 0.");
         }
+        return cropImage(width, height, true);
+    }
 
-        return spec;
+    /**
+     * Crops the image and writes it to a content or file Uri, e.g. one handed
+     * out by a ContentProvider. Decoding the crop from the original, encoding
+     * and writing all happen on a background thread; the
+     * {@link OnCropSavedListener} is told when it is done. Unlike
+     * {@link #getCroppedImage()}, the cropped pixels never reach the caller,
+     * so only the Uri needs to be passed on (e.g. in an Intent). The crop is
+     * sized like that of {@link #getCroppedImage()}: at full resolution, up
+     * to the pixels the {@link SizingPolicy} allows.
+     * 
+     * @param uri the Uri to write to
+     * @param format the format to encode the crop in; JPEG is much faster to
+     *            encode than PNG for photos
+     * @param quality the quality hint for lossy formats, 0 to 100
+     * @throws IllegalStateException if the image has not been loaded yet
+     */
+    public void saveCroppedImage(Uri uri, Bitmap.CompressFormat format, int quality) {
+        saveCroppedImage(uri, null, format, quality);
     }
 
+    /**
+     * Crops the image and writes it to a file on a background thread. The
+     * {@link OnCropSavedListener} receives the file as a Uri.
+     * 
+     * @param file the file to write to; deleted again if writing fails
+     * @param format the format to encode the crop in
+     * @param quality the quality hint for lossy formats, 0 to 100
+     * @throws IllegalStateException if the image has not been loaded yet
+     * @see #saveCroppedImage(Uri, Bitmap.CompressFormat, int)
+     */
+    public void saveCroppedImage(File file, Bitmap.CompressFormat format, int quality) {
+        saveCroppedImage(null, file, format, quality);
+    }
+
+    /**
+     * Sets the listener notified when a crop started with one of the
+     * saveCroppedImage() methods has been written, or has failed.
+     * 
+     * @param listener the listener; null to remove it
+     */
+    public void setOnCropSavedListener(OnCropSavedListener listener) {
+        mOnCropSavedListener = listener;
+    }
+
+    /**
+     * Sets the policy that chooses how far images are subsampled for display,
+     * and how large crops may be, from the memory of the device. Applies to
+     * images loaded and crops made from now on.
+     * 
+     * @param policy the policy; null for the default {@link MemorySizingPolicy}
+     */
+    public void setSizingPolicy(SizingPolicy policy) {
+        mSizingPolicy = policy != null ? policy : new MemorySizingPolicy(getContext());
+    }
+
+    /**
+     * Sets the listener notified of the timings of decoding, cropping,
+     * drawing and dragging. Meant for profiling; when no listener is set,
+     * nothing is measured.
+     * 
+     * @param metrics the listener; null to remove it
+     */
+    public void setCropMetrics(CropMetrics metrics) {
+        mCropMetrics = metrics;
+        mCropOverlayView.setCropMetrics(metrics);
+    }
+
+    /**
+     * Gets the crop window's position relative to the source image at full
+     * resolution (not the image displayed in the CropImageView), in the current
+     * orientation. Use {@link #getCropState()} to pass the crop to another
+     * thread.
+     * 
+     * @return a RectF instance containing cropped area boundaries of the source
+     *         image, or null if the image is still loading
+     */
+    public RectF getActualCropRect() {
+
+        final RectF actualCropRect = new RectF();
+        return getActualCropRect(actualCropRect) ? actualCropRect : null;
+    }
+
+    /**
+     * Like {@link #getActualCropRect()}, but stores the crop in the given
+     * RectF instead of allocating one, e.g. to follow the crop while it is
+     * being dragged.
+     * 
+     * @param outRect the RectF to store the crop in
+     * @return false if the image is still loading, in which case outRect is
+     *         not changed
+     */
+    public boolean getActualCropRect(RectF outRect) {
+
+        if (mBitmap == null) {
+            return false;
+        }
+
+        // The displayed Bitmap may be subsampled, so scale to the size of the
+        // source.
+        getCropRectInBitmap(outRect);
+        mCropMatrix.setScale((float) mSourceWidth / mBitmap.getWidth(), (float) mSourceHeight / mBitmap.getHeight());
+        mCropMatrix.mapRect(outRect);
+
+        // Correct for floating point errors. Crop rect boundaries should not
+        // exceed the source Bitmap bounds.
+        if (!outRect.intersect(0, 0, mSourceWidth, mSourceHeight)) {
+            outRect.setEmpty();
+        }
+
+        // Report it the way the source is displayed.
+        BitmapUtil.getOrientationMatrix(getNormalizedRotation(),
+                                        mFlipHorizontally,
+                                        mSourceWidth,
+                                        mSourceHeight,
+                                        mCropMatrix);
+        mCropMatrix.mapRect(outRect);
+
+        return true;
+    }
+
+    /**
+     * Takes an immutable snapshot of the crop: the region of the source image
+     * and its orientation. Like the rest of this view it must be called on the
+     * main thread, but the snapshot can be used on any thread, e.g. to decode
+     * the crop with {@link CropState#decodeCroppedImage}, and is not affected
+     * by later changes to the view. It holds a reference on the ImageSource;
+     * call {@link CropState#release()} once done with it.
+     * 
+     * @return the crop, or null if the image is still loading or the crop
+     *         window is outside of it
+     */
+    public CropState getCropState() {
+
+        if (mBitmap == null) {
+            return null;
+        }
+
+        final Rect region = getCropRegion(mSourceWidth, mSourceHeight);
+        if (region == null) {
+            return null;
+        }
+        return new CropState(mImageSource != null ? mImageSource.acquire() : null,
+                             mSourceWidth,
+                             mSourceHeight,
+                             region,
+                             getNormalizedRotation(),
+                             mFlipHorizontally);
+    }
+
+    /**
+     * Gets the crop window, in the pixels of this view, for tools such as the
+     * {@link GestureRecorder}; it must not be changed.
+     */
+    CropWindow getCropWindow() {
+        return mCropOverlayView.getCropWindow();
+    }
+
+    /**
+     * Sets whether the aspect ratio is fixed or not; true fixes the aspect ratio, while
+     * false allows it to be changed.
+     * 
+     * @param fixAspectRatio Boolean that signals whether the aspect ratio should be
+     *            maintained.
+     */
+    public void setFixedAspectRatio(boolean fixAspectRatio) {
+        mCropOverlayView.setFixedAspectRatio(fixAspectRatio);
+    }
+
+    /**
+     * Sets the guidelines for the CropOverlayView to be either on, off, or to show when
+     * resizing the application.
+     * 
+     * @param guidelines Integer that signals whether the guidelines should be on, off, or
+     *            only showing when resizing.
+     */
+    public void setGuidelines(int guidelines) {
+        mCropOverlayView.setGuidelines(guidelines);
+    }
+
+    /**
+     * Sets whether dragging the crop window follows the mean of the touch
+     * samples of a frame rather than the last one; see
+     * {@link CropOverlayView#setTouchSmoothingEnabled(boolean)}.
+     * 
+     * @param touchSmoothing true to smooth the drag
+     */
+    public void setTouchSmoothingEnabled(boolean touchSmoothing) {
+        mCropOverlayView.setTouchSmoothingEnabled(touchSmoothing);
+    }
+
+    /**
+     * Sets whether the image behind the crop window can be zoomed with a
+     * pinch, and panned and flung by dragging outside the crop window.
+     * Enabled by default. Disabling it resets the zoom.
+     * 
+     * @param zoomEnabled true to allow zooming and panning
+     */
+    public void setZoomEnabled(boolean zoomEnabled) {
+
+        mZoomEnabled = zoomEnabled;
+        if (!zoomEnabled) {
+            resetZoom();
+        }
+    }
+
+    public boolean isZoomEnabled() {
+        return mZoomEnabled;
+    }
+
+    /**
+     * Zooms the image back out to fit the view. The crop window stays where
+     * it is on screen.
+     */
+    public void resetZoom() {
+        clearZoom();
+        updateDisplayMatrix();
+    }
+
+    /**
+     * Sets the both the X and Y values of the aspectRatio.
+     * 
+     * @param aspectRatioX int that specifies the new X value of the aspect ratio
+     * @param aspectRatioX int that specifies the new Y value of the aspect ratio
+     */
+    public void setAspectRatio(int aspectRatioX, int aspectRatioY) {
+        mAspectRatioX = aspectRatioX;
+        mCropOverlayView.setAspectRatioX(mAspectRatioX);
+
+        mAspectRatioY = aspectRatioY;
+        mCropOverlayView.setAspectRatioY(mAspectRatioY);
+    }
+
+    /**
+     * Rotates image by the specified number of degrees clockwise. Cycles from 0 to 360
+     * degrees.
+     * 
+     * @param degrees Integer specifying the number of degrees to rotate.
+     */
+    public void rotateImage(int degrees) {
+
+        keepCropWindow();
+        clearZoom();
+
+        mDegreesRotated += degrees;
+        mDegreesRotated = mDegreesRotated % 360;
+
+        requestLayout();
+    }
+
+    /**
+     * Mirrors the image as it is displayed from left to right. Like rotation,
+     * this only changes how the image is drawn until it is cropped.
+     */
+    public void flipImageHorizontally() {
+
+        keepCropWindow();
+        clearZoom();
+
+        // Mirroring after rotating equals mirroring first, then rotating the
+        // other way.
+        mFlipHorizontally = !mFlipHorizontally;
+        mDegreesRotated = (360 - getNormalizedRotation()) % 360;
+
+        requestLayout();
+    }
+
+    /**
+     * Mirrors the image as it is displayed from top to bottom.
+     */
+    public void flipImageVertically() {
+
+        keepCropWindow();
+        clearZoom();
+
+        // A vertical flip is a horizontal flip turned by 180 degrees.
+        mFlipHorizontally = !mFlipHorizontally;
+        mDegreesRotated = (540 - getNormalizedRotation()) % 360;
+
+        requestLayout();
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Sets a Bitmap supplied by the caller or by the ExifInterface variant,
+     * replacing any ImageSource. A Bitmap too big to be drawn, or to fit the
+     * memory given to the displayed image, is only kept for cropping; a proxy
+     * scaled to the screen is displayed instead.
+     * 
+     * @param handle a reference on the Bitmap that this view takes over; may
+     *            be null
+     */
+    private void takeImageBitmap(BitmapHandle handle) {
+
+        final Bitmap bitmap = handle != null ? handle.get() : null;
+
+        cancelLoad();
+        setImageSource(null, bitmap != null ? bitmap.getWidth() : 0, bitmap != null ? bitmap.getHeight() : 0);
+        mDegreesRotated = 0;
+        mFlipHorizontally = false;
+        mPendingCropRect = null;
+
+        final Bitmap proxy = bitmap != null ? createDisplayProxy(bitmap) : null;
+        if (proxy != null) {
+            setSourceBitmap(handle);
+            setDisplayBitmap(BitmapHandle.adopt(proxy, mBitmapPool));
+        } else {
+            setSourceBitmap(null);
+            setDisplayBitmap(handle);
+        }
+    }
+
+    /**
+     * Scales a Bitmap down to about the size of the screen, the way an
+     * ImageSource is subsampled when it is decoded for display. Either side
+     * of the screen may end up along the longer side of the image, as it can
+     * be rotated.
+     * 
+     * @return the proxy, or null if the Bitmap can be displayed as it is
+     */
+    private Bitmap createDisplayProxy(Bitmap bitmap) {
+
+        // The caller's Bitmap stays in memory either way, so a proxy only adds
+        // to it; it is worth it only when the Bitmap cannot be drawn, or is
+        // bigger than an image decoded for display may be. The proxy keeps
+        // the config of the caller's Bitmap, so it is only sized as RGB_565
+        // if the Bitmap already is.
+        final boolean opaque = bitmap.getConfig() == Bitmap.Config.RGB_565;
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        mSizingPolicy.choosePreviewOptions(bitmap.getWidth(),
+                                           bitmap.getHeight(),
+                                           bitmap.getWidth(),
+                                           bitmap.getHeight(),
+                                           mMaxBitmapWidth,
+                                           mMaxBitmapHeight,
+                                           opaque,
+                                           options);
+        if (options.inSampleSize == 1) {
+            return null;
+        }
+
+        final int reqSize = Math.max(getDecodeWidth(), getDecodeHeight());
+        mSizingPolicy.choosePreviewOptions(bitmap.getWidth(),
+                                           bitmap.getHeight(),
+                                           reqSize,
+                                           reqSize,
+                                           mMaxBitmapWidth,
+                                           mMaxBitmapHeight,
+                                           opaque,
+                                           options);
+
+        final int sampleSize = options.inSampleSize;
+        if (sampleSize == 1) {
+            return null;
+        }
+
+        return BitmapUtil.transformBitmap(bitmap,
+                                          new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                                          0,
+                                          false,
+                                          bitmap.getWidth() / sampleSize,
+                                          bitmap.getHeight() / sampleSize,
+                                          mBitmapPool);
+    }
+
+    /**
+     * Replaces the full-resolution Bitmap kept behind a display proxy, and
+     * releases the reference on the one it replaces.
+     * 
+     * @param handle a reference that this view takes over; may be null
+     */
+    private void setSourceBitmap(BitmapHandle handle) {
+
+        final BitmapHandle oldHandle = mSourceBitmapHandle;
+        mSourceBitmapHandle = handle;
+
+        if (oldHandle != null) {
+            oldHandle.release();
+        }
+    }
+
+    /**
+     * Shows the given Bitmap without touching the ImageSource, e.g. once it
+     * has been decoded, and releases the reference on the one it replaces.
+     * 
+     * @param handle a reference that this view takes over; may be null
+     */
+    private void setDisplayBitmap(BitmapHandle handle) {
+
+        final BitmapHandle oldHandle = mBitmapHandle;
+
+        mBitmapHandle = handle;
+        mBitmap = handle != null ? handle.get() : null;
+        clearZoom();
+
+        // The image is placed by mDisplayMatrix; the placeholder is just fitted.
+        if (mBitmap != null) {
+            mImageView.setScaleType(ImageView.ScaleType.MATRIX);
+            mImageView.setImageBitmap(mBitmap);
+        } else {
+            mImageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            mImageView.setImageDrawable(mPlaceholder);
+        }
+
+        // Only once the ImageView has let go of it.
+        if (oldHandle != null) {
+            oldHandle.release();
+        }
+
+        // A new image gets a new crop window once it has been measured.
+        if (mCropOverlayView != null) {
+            clearBitmapRect();
+        }
+
+        // The measured size and the Bitmap rect depend on the Bitmap.
+        requestLayout();
+    }
+
+    /**
+     * Gives a Bitmap that is no longer used to the pool, or recycles it if
+     * pooling is disabled.
+     */
+    static void releaseBitmap(Bitmap bitmap, BitmapPool pool) {
+
+        if (pool != null) {
+            pool.put(bitmap);
+        } else if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Starts decoding mImageSource in the background.
+     */
+    private void startLoad() {
+        mLoadTask = new LoadImageTask(mImageSource, getDecodeWidth(), getDecodeHeight(), mBitmapPool).execute();
+    }
+
+    /**
+     * Cancels the load in progress, if any. The ImageSource is kept, so that
+     * the load can be restarted when the view is attached again.
+     */
+    private void cancelLoad() {
+
+        if (mLoadTask != null) {
+            mLoadTask.cancel();
+            mLoadTask = null;
+        }
+    }
+
+    /**
+     * Called on the main thread when the LoadImageTask has decoded the image.
+     */
+    private void onImageLoaded(ImageSource source,
+                               Bitmap bitmap,
+                               int sourceWidth,
+                               int sourceHeight,
+                               long decodeNanos) {
+
+        if (mCropMetrics != null) {
+            mCropMetrics.onImageDecoded(decodeNanos, bitmap.getByteCount());
+        }
+
+        mLoadTask = null;
+        setImageSource(source, sourceWidth, sourceHeight);
+        setDisplayBitmap(BitmapHandle.adopt(bitmap, mBitmapPool));
+
+        if (mTiledRendering) {
+            startTiledRendering();
+        }
+
+        if (mOnImageLoadListener != null) {
+            mOnImageLoadListener.onImageLoaded(this);
+        }
+    }
+
+    /**
+     * Called on the main thread when the LoadImageTask has failed.
+     */
+    private void onImageLoadFailed(Exception error) {
+
+        Log.w(TAG, "Unable to decode image", error);
+
+        mLoadTask = null;
+        setImageSource(null, 0, 0);
+
+        if (mOnImageLoadListener != null) {
+            mOnImageLoadListener.onImageLoadFailed(this, error);
+        }
+    }
+
+    /**
+     * Starts a SaveCropTask writing to either the Uri or the file.
+     */
+    private void saveCroppedImage(Uri uri, File file, Bitmap.CompressFormat format, int quality) {
+
+        if (mBitmap == null) {
+            throw new IllegalStateException("Cannot crop before the image has been loaded");
+        }
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 0 and 100.");
+        }
+
+        // The crop window and the orientation are read now; the task must not
+        // touch the view (or mBitmap, which may be pooled meanwhile).
+        final CropState state = getCropState();
+        if (state == null) {
+            throw new IllegalStateException("The crop window is outside of the image");
+        }
+
+        // The task holds a reference on whatever it crops from, so that the
+        // view may move on to another image, or be cleared, meanwhile: the
+        // state's on the ImageSource or, without a source, one on the caller's
+        // Bitmap, which is then neither copied here nor recycled while it is
+        // being cropped.
+        final BitmapHandle sourceBitmap = mImageSource == null ? getCropSourceHandle().acquire() : null;
+
+        new SaveCropTask(uri, file, format, quality, state, sourceBitmap).execute();
+    }
+
+    /**
+     * Called on the main thread when a SaveCropTask has finished.
+     */
+    private void onCropSaved(Uri uri, long saveNanos, int byteCount) {
+
+        if (mCropMetrics != null) {
+            mCropMetrics.onCropSaved(saveNanos, byteCount);
+        }
+
+        if (mOnCropSavedListener != null) {
+            mOnCropSavedListener.onCropSaved(this, uri);
+        }
+    }
+
+    /**
+     * Called on the main thread when a SaveCropTask has failed.
+     */
+    private void onCropSaveFailed(Exception error) {
+
+        Log.w(TAG, "Unable to save crop", error);
+
+        if (mOnCropSavedListener != null) {
+            mOnCropSavedListener.onCropSaveFailed(this, error);
+        }
+    }
+
+    /**
+     * Applies the orientation to a cropped Bitmap, which it replaces.
+     */
+    private static Bitmap orientCroppedBitmap(Bitmap croppedBitmap,
+                                              int degrees,
+                                              boolean flipHorizontally,
+                                              BitmapPool pool) {
+
+        // The orientation has only been displayed so far; apply it to the
+        // cropped pixels alone.
+        if (degrees == 0 && !flipHorizontally) {
+            return croppedBitmap;
+        }
+        TraceUtil.beginSection("CropImageView orient");
+        try {
+            final Bitmap orientedBitmap = BitmapUtil.orientBitmap(croppedBitmap, degrees, flipHorizontally, pool);
+            releaseBitmap(croppedBitmap, pool);
+            return orientedBitmap;
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    /**
+     * Crops, orients and scales the image.
+     * 
+     * @param reqWidth the requested width; 0 for the size of the crop
+     * @param reqHeight the requested height; 0 for the size of the crop
+     * @param exact whether to scale to exactly the requested size, rather
+     *            than down to fit it
+     * @return the cropped image, or null if there is none
+     */
+    private Bitmap cropImage(int reqWidth, int reqHeight, boolean exact) {
+
+        final long startNanos = mCropMetrics != null ? System.nanoTime() : 0;
+        final Bitmap croppedBitmap;
+
+        TraceUtil.beginSection("CropImageView crop");
+        try {
+            croppedBitmap = cropImageUntraced(reqWidth, reqHeight, exact);
+        } finally {
+            TraceUtil.endSection();
+        }
+
+        if (mCropMetrics != null && croppedBitmap != null) {
+            mCropMetrics.onImageCropped(System.nanoTime() - startNanos, croppedBitmap.getByteCount());
+        }
+        return croppedBitmap;
+    }
+
+    /**
+     * Does the work of {@link #cropImage(int, int, boolean)}.
+     */
+    private Bitmap cropImageUntraced(int reqWidth, int reqHeight, boolean exact) {
+
+        // Nothing to crop while the image is still loading.
+        if (mBitmap == null) {
+            return null;
+        }
+
+        // Read the crop straight from the original when we have it, so that
+        // only the cropped region is decoded, subsampled as far as the output
+        // size allows.
+        if (mImageSource != null) {
+
+            final CropState state = getCropState();
+            if (state == null) {
+                return null;
+            }
+
+            try {
+                return state.decode(reqWidth, reqHeight, exact, mBitmapPool, mSizingPolicy);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to decode crop region, cropping the displayed image instead", e);
+            } finally {
+                state.release();
+            }
+        }
+
+        // Otherwise draw the subset straight out of the caller's Bitmap.
+        final Bitmap sourceBitmap = getCropSourceHandle().get();
+        final Rect region = getCropRegion(sourceBitmap.getWidth(), sourceBitmap.getHeight());
+        if (region == null) {
+            return null;
+        }
+
+        final int degrees = getNormalizedRotation();
+        final Point size = CropState.getOutputSize(region, degrees, reqWidth, reqHeight, exact);
+        if (!exact) {
+            CropState.limitOutputSize(size, mSizingPolicy.getMaxCropPixels());
+        }
+        return BitmapUtil.transformBitmap(sourceBitmap, region, degrees, mFlipHorizontally, size.x, size.y, mBitmapPool);
+    }
+
+    /**
+     * Gets the Bitmap to crop from when there is no ImageSource: the caller's
+     * Bitmap, at full resolution.
+     */
+    private BitmapHandle getCropSourceHandle() {
+        return mSourceBitmapHandle != null ? mSourceBitmapHandle : mBitmapHandle;
+    }
+
+    /**
+     * Maps the crop window back through the display matrix.
+     * 
+     * @param outRect the RectF to store the crop window in mBitmap pixels,
+     *            before orientation, in
+     * @return outRect
+     */
+    private RectF getCropRectInBitmap(RectF outRect) {
+
+        final CropWindow window = mCropOverlayView.getCropWindow();
+        outRect.set(window.getLeft(), window.getTop(), window.getRight(), window.getBottom());
+
+        mDisplayMatrix.invert(mCropMatrix);
+        mCropMatrix.mapRect(outRect);
+
+        return outRect;
+    }
+
+    /**
+     * Gets the crop window in the pixels of an unoriented image of the given
+     * size (the source or mBitmap).
+     * 
+     * @return the region to crop, or null if it is empty
+     */
+    private Rect getCropRegion(int width, int height) {
+
+        final RectF cropRect = getCropRectInBitmap(new RectF());
+        final Matrix matrix = new Matrix();
+        matrix.setScale((float) width / mBitmap.getWidth(), (float) height / mBitmap.getHeight());
+        matrix.mapRect(cropRect);
+
+        final Rect region = new Rect();
+        cropRect.round(region);
+        if (!region.intersect(0, 0, width, height)) {
+            return null;
+        }
+        return region;
+    }
+
+    /**
+     * Remembers where the crop window is on the image, so that it follows the
+     * image through an orientation change instead of being reset.
+     */
+    private void keepCropWindow() {
+
+        if (mPendingCropRect == null) {
+            mPendingCropRect = getNormalizedCropRect();
+        }
+    }
+
+    /**
+     * Gets the crop window relative to the size of mBitmap, before
+     * orientation, so that it can be put back on a decode of another size.
+     * 
+     * @return the crop window, or null if there is none yet
+     */
+    private RectF getNormalizedCropRect() {
+
+        if (mBitmap == null || getWidth() == 0 || getHeight() == 0) {
+            return null;
+        }
+
+        final RectF cropRect = getCropRectInBitmap(new RectF());
+        cropRect.left /= mBitmap.getWidth();
+        cropRect.top /= mBitmap.getHeight();
+        cropRect.right /= mBitmap.getWidth();
+        cropRect.bottom /= mBitmap.getHeight();
+        return cropRect;
+    }
+
+    /**
+     * Gets the current rotation as a value between 0 and 359 degrees.
+     */
+    private int getNormalizedRotation() {
+        return ((mDegreesRotated % 360) + 360) % 360;
+    }
+
+    /**
+     * Gets the width of mBitmap as it is displayed, i.e. its height if it is
+     * rotated sideways.
+     */
+    private int getOrientedBitmapWidth() {
+        return getNormalizedRotation() % 180 == 0 ? mBitmap.getWidth() : mBitmap.getHeight();
+    }
+
+    /**
+     * Gets the height of mBitmap as it is displayed.
+     */
+    private int getOrientedBitmapHeight() {
+        return getNormalizedRotation() % 180 == 0 ? mBitmap.getHeight() : mBitmap.getWidth();
+    }
+
+    /**
+     * Replaces the current ImageSource, releasing the previous one.
+     */
+    private void setImageSource(ImageSource source, int sourceWidth, int sourceHeight) {
+
+        if (mImageSource != null && mImageSource != source) {
+            mTiledImageView.clear();
+            mImageSource.release();
+        }
+
+        mImageSource = source;
+        mSourceWidth = sourceWidth;
+        mSourceHeight = sourceHeight;
+    }
+
+    /**
+     * Hands the current ImageSource to the TiledImageView, together with how
+     * much the preview was subsampled.
+     */
+    private void startTiledRendering() {
+
+        final int baseSampleSize = Math.round((float) Math.max(mSourceWidth, mSourceHeight)
+                                              / Math.max(mBitmap.getWidth(), mBitmap.getHeight()));
+        mTiledImageView.setImage(mImageSource, mSourceWidth, mSourceHeight, baseSampleSize);
+    }
+
+    /**
+     * Rebuilds mDisplayMatrix for the current orientation and view size (the
+     * image is oriented, then fitted center-inside), and passes it on to the
+     * ImageView and the TiledImageView.
+     */
+    private void updateDisplayMatrix() {
+
+        if (mBitmap == null) {
+            return;
+        }
+
+        // Called for every step of a zoom, pan or fling, so nothing is
+        // allocated here.
+        updateBitmapRect(getWidth(), getHeight());
+        final Rect displayedImageRect = mBitmapRect;
+
+        BitmapUtil.getOrientationMatrix(getNormalizedRotation(),
+                                        mFlipHorizontally,
+                                        mBitmap.getWidth(),
+                                        mBitmap.getHeight(),
+                                        mDisplayMatrix);
+        mDisplayMatrix.postScale((float) displayedImageRect.width() / getOrientedBitmapWidth(),
+                                 (float) displayedImageRect.height() / getOrientedBitmapHeight());
+        mDisplayMatrix.postTranslate(displayedImageRect.left, displayedImageRect.top);
+        mDisplayMatrix.postConcat(mZoomMatrix);
+        mFittedImageRect.set(displayedImageRect);
+
+        mImageView.setImageMatrix(mDisplayMatrix);
+
+        // Tiles are in source pixels, which mBitmap may be a subsample of.
+        if (mImageSource != null && mSourceWidth > 0 && mSourceHeight > 0) {
+            mTileMatrix.set(mDisplayMatrix);
+            mTileMatrix.preScale((float) mBitmap.getWidth() / mSourceWidth, (float) mBitmap.getHeight() / mSourceHeight);
+            mTiledImageView.setImageMatrix(mTileMatrix);
+        }
+    }
+
+    /**
+     * Fits the oriented image center-inside a view of the given size, and
+     * hands the result to the crop window. Measuring and laying out call this
+     * several times per pass, so nothing is done unless one of the sizes has
+     * changed; the crop window then follows the image instead of being reset.
+     */
+    private void updateBitmapRect(int viewWidth, int viewHeight) {
+
+        final int imageWidth = getOrientedBitmapWidth();
+        final int imageHeight = getOrientedBitmapHeight();
+
+        if (imageWidth == mBitmapRectImageWidth
+            && imageHeight == mBitmapRectImageHeight
+            && viewWidth == mBitmapRectViewWidth
+            && viewHeight == mBitmapRectViewHeight) {
+            return;
+        }
+
+        mBitmapRectImageWidth = imageWidth;
+        mBitmapRectImageHeight = imageHeight;
+        mBitmapRectViewWidth = viewWidth;
+        mBitmapRectViewHeight = viewHeight;
+
+        ImageViewUtil.getBitmapRectCenterInside(imageWidth, imageHeight, viewWidth, viewHeight, mBitmapRect);
+        mCropOverlayView.setBitmapRect(mBitmapRect);
+    }
+
+    /**
+     * Forgets the bitmap rect, e.g. for a new image, so that the crop window
+     * is hidden until the image has been measured and then set up afresh.
+     */
+    private void clearBitmapRect() {
+
+        mBitmapRectImageWidth = 0;
+        mBitmapRectImageHeight = 0;
+        mBitmapRectViewWidth = 0;
+        mBitmapRectViewHeight = 0;
+
+        mBitmapRect.setEmpty();
+        mCropOverlayView.setBitmapRect(EMPTY_RECT);
+    }
+
+    /**
+     * Gets the current zoom; 1 when the image is fitted to the view.
+     */
+    private float getZoom() {
+        mZoomMatrix.getValues(mMatrixValues);
+        return mMatrixValues[Matrix.MSCALE_X];
+    }
+
+    /**
+     * Gets the largest zoom, at which a source pixel is
+     * MAX_ZOOM_PIXEL_SCALE view pixels wide.
+     */
+    private float getMaxZoom() {
+
+        final int sourceWidth = getNormalizedRotation() % 180 == 0 ? mSourceWidth : mSourceHeight;
+        if (sourceWidth <= 0 || mFittedImageRect.isEmpty()) {
+            return 1f;
+        }
+        return Math.max(1f, MAX_ZOOM_PIXEL_SCALE * sourceWidth / mFittedImageRect.width());
+    }
+
+    /**
+     * Scales the image about the given point in view pixels, within the
+     * zoom range.
+     */
+    private void zoomBy(float factor, float focusX, float focusY) {
+
+        final float zoom = getZoom();
+        final float newZoom = Math.max(1f, Math.min(zoom * factor, getMaxZoom()));
+
+        mZoomMatrix.postScale(newZoom / zoom, newZoom / zoom, focusX, focusY);
+        constrainZoom();
+        updateDisplayMatrix();
+    }
+
+    /**
+     * Moves the image by the given distance in view pixels, as far as it
+     * still covers the rect it was fitted to.
+     */
+    private void panBy(float dx, float dy) {
+
+        mZoomMatrix.postTranslate(dx, dy);
+        constrainZoom();
+        updateDisplayMatrix();
+    }
+
+    /**
+     * Moves the zoomed image back over the rect it was fitted to, wherever it
+     * no longer covers it.
+     */
+    private void constrainZoom() {
+
+        mZoomMatrix.mapRect(mZoomedImageRect, mFittedImageRect);
+
+        float dx = 0;
+        if (mZoomedImageRect.left > mFittedImageRect.left) {
+            dx = mFittedImageRect.left - mZoomedImageRect.left;
+        } else if (mZoomedImageRect.right < mFittedImageRect.right) {
+            dx = mFittedImageRect.right - mZoomedImageRect.right;
+        }
+
+        float dy = 0;
+        if (mZoomedImageRect.top > mFittedImageRect.top) {
+            dy = mFittedImageRect.top - mZoomedImageRect.top;
+        } else if (mZoomedImageRect.bottom < mFittedImageRect.bottom) {
+            dy = mFittedImageRect.bottom - mZoomedImageRect.bottom;
+        }
+
+        mZoomMatrix.postTranslate(dx, dy);
+    }
+
+    /**
+     * Keeps panning the image after the finger has been lifted, slowing down
+     * and stopping at the edges of the image.
+     */
+    private void fling(float velocityX, float velocityY) {
+
+        stopFling();
+
+        // The scroller runs from 0; its range is how far the image can move.
+        mZoomMatrix.mapRect(mZoomedImageRect, mFittedImageRect);
+        mFlingX = 0;
+        mFlingY = 0;
+        mScroller.fling(0,
+                        0,
+                        Math.round(velocityX),
+                        Math.round(velocityY),
+                        Math.round(mFittedImageRect.right - mZoomedImageRect.right),
+                        Math.round(mFittedImageRect.left - mZoomedImageRect.left),
+                        Math.round(mFittedImageRect.bottom - mZoomedImageRect.bottom),
+                        Math.round(mFittedImageRect.top - mZoomedImageRect.top));
+        postOnNextFrame(mFlingStep);
+    }
+
+    private void stopFling() {
+        mScroller.forceFinished(true);
+        removeCallbacks(mFlingStep);
+    }
+
+    /**
+     * Drops the zoom without updating the display matrix, e.g. when it is
+     * rebuilt anyway on the next layout.
+     */
+    private void clearZoom() {
+        stopFling();
+        mZoomMatrix.reset();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postOnNextFrame(Runnable action) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postOnAnimation(action);
+        } else {
+            post(action);
+        }
+    }
+
+    /**
+     * Gets the width to decode images for; the screen width until this view
+     * has been measured.
+     */
+    private int getDecodeWidth() {
+        final int width = getWidth();
+        return width > 0 ? width : getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * Gets the height to decode images for; the screen height until this view
+     * has been measured.
+     */
+    private int getDecodeHeight() {
+        final int height = getHeight();
+        return height > 0 ? height : getResources().getDisplayMetrics().heightPixels;
+    }
+
+    private void init(Context context) {
+
+        final LayoutInflater inflater = LayoutInflater.from(context);
+        final View v = inflater.inflate(R.layout.crop_image_view, this, true);
+
+        mImageView = (ImageView) v.findViewById(R.id.ImageView_image);
+        mSizingPolicy = new MemorySizingPolicy(context);
+
+        mScroller = new OverScroller(context);
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                if (mImageGesture) {
+                    zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                }
+                return true;
+            }
+        });
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                if (mImageGesture) {
+                    panBy(-distanceX, -distanceY);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+                if (mImageGesture) {
+                    fling(velocityX, velocityY);
+                }
+                return true;
+            }
+        });
+
+        // Sharp tiles are drawn over the preview, underneath the crop window.
+        mTiledImageView = new TiledImageView(context);
+        addView(mTiledImageView, 1, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+        mCropOverlayView = (CropOverlayView) v.findViewById(R.id.CropOverlayView);
+        mCropOverlayView.setInitialAttributeValues(mGuidelines, mFixAspectRatio, mAspectRatioX, mAspectRatioY);
+
+        updateLayerTypes();
+
+        // Decoded in the background; the crop window is set up once it arrives.
+        setImageResource(mImageResource);
+    }
+
+    /**
+     * Puts the image and the tiles in hardware layers, or takes them out
+     * again. The crop window redraws on every frame of a drag, so a layer of
+     * its own would only be re-rendered and then composited on top; it is
+     * left without one.
+     */
+    private void updateLayerTypes() {
+
+        final int layerType = mLayerIsolation ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE;
+        mImageView.setLayerType(layerType, null);
+        mTiledImageView.setLayerType(layerType, null);
+        mCropOverlayView.setLayerType(View.LAYER_TYPE_NONE, null);
+    }
+
+    /**
+     * Determines the specs for the onMeasure function. Calculates the width or height
+     * depending on the mode.
+     * 
+     * @param measureSpecMode The mode of the measured width or height.
+     * @param measureSpecSize The size of the measured width or height.
+     * @param desiredSize The desired size of the measured width or height.
+     * @return The final size of the width or height.
+     */
+    private static int getOnMeasureSpec(int measureSpecMode, int measureSpecSize, int desiredSize) {
+
+        // Measure Width
+        int spec;
+        if (measureSpecMode == MeasureSpec.EXACTLY) {
+            // Must be this size
+            spec = measureSpecSize;
+        } else if (measureSpecMode == MeasureSpec.AT_MOST) {
+            // Can't be bigger than...; match_parent value
+            spec = Math.min(desiredSize, measureSpecSize);
+        } else {
+            // Be whatever you want; wrap_content
+            spec = desiredSize;
+        }
+
+        return spec;
+    }
+
+    /**
+     * Decodes an ImageSource for display: a bounds pass followed by a
+     * subsampled decode, both off the main thread.
+     */
+    private class LoadImageTask extends BackgroundTask<Bitmap> {
+
+        // A reference of the task's own, so that the view may release the
+        // source while a cancelled decode is still reading it.
+        private final ImageSource mSource;
+        private final int mReqWidth;
+        private final int mReqHeight;
+        private final BitmapPool mPool;
+        private final SizingPolicy mPolicy;
+        private final int mMaxWidth;
+        private final int mMaxHeight;
+
+        private int mOutWidth;
+        private int mOutHeight;
+        private long mDecodeNanos;
+
+        LoadImageTask(ImageSource source, int reqWidth, int reqHeight, BitmapPool pool) {
+            mSource = source.acquire();
+            mReqWidth = reqWidth;
+            mReqHeight = reqHeight;
+            mPool = pool;
+            mPolicy = mSizingPolicy;
+            mMaxWidth = mMaxBitmapWidth;
+            mMaxHeight = mMaxBitmapHeight;
+        }
+
+        @Override
+        protected Bitmap doInBackground() throws IOException {
+
+            final long startNanos = System.nanoTime();
+            TraceUtil.beginSection("CropImageView decode");
+            try {
+                return decode();
+            } finally {
+                TraceUtil.endSection();
+                mDecodeNanos = System.nanoTime() - startNanos;
+            }
+        }
+
+        @Override
+        protected void onComplete(Bitmap bitmap) {
+            onImageLoaded(mSource, bitmap, mOutWidth, mOutHeight, mDecodeNanos);
+            mSource.release();
+        }
+
+        @Override
+        protected void onFailed(Exception error) {
+            onImageLoadFailed(error);
+            mSource.release();
+        }
+
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            releaseBitmap(bitmap, mPool);
+            mSource.release();
+        }
+
+        private Bitmap decode() throws IOException {
+
+            final BitmapFactory.Options bounds = BitmapUtil.decodeBounds(mSource);
+            mOutWidth = bounds.outWidth;
+            mOutHeight = bounds.outHeight;
+
+            if (mOutWidth <= 0 || mOutHeight <= 0) {
+                throw new IOException("Unable to decode image bounds");
+            }
+
+            if (isCancelled()) {
+                return null;
+            }
+
+            // Only a JPEG is known to be opaque without decoding it.
+            final boolean opaque = "image/jpeg".equals(bounds.outMimeType);
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            mPolicy.choosePreviewOptions(mOutWidth,
+                                         mOutHeight,
+                                         mReqWidth,
+                                         mReqHeight,
+                                         mMaxWidth,
+                                         mMaxHeight,
+                                         opaque,
+                                         options);
+
+            final Bitmap bitmap = BitmapUtil.decodeSampledBitmap(mSource, mOutWidth, mOutHeight, options, mPool);
+            if (bitmap == null) {
+                throw new IOException("Unable to decode image");
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Decodes, orients, encodes and writes a crop. Everything it needs from
+     * the view is copied when it is created.
+     */
+    private class SaveCropTask extends BackgroundTask<Uri> {
+
+        private final Context mContext;
+        private final Uri mUri;
+        private final File mFile;
+        private final Bitmap.CompressFormat mFormat;
+        private final int mQuality;
+
+        private final int mPreviewWidth;
+        private final int mPreviewHeight;
+        private final BitmapPool mPool;
+        private final SizingPolicy mPolicy;
+
+        // The crop, holding a reference on its ImageSource if there is one;
+        // otherwise a reference on the caller's Bitmap. Either is released
+        // once the crop has been read out of it.
+        private final CropState mState;
+        private final BitmapHandle mSourceBitmap;
+
+        private long mSaveNanos;
+        private int mByteCount;
+
+        SaveCropTask(Uri uri,
+                     File file,
+                     Bitmap.CompressFormat format,
+                     int quality,
+                     CropState state,
+                     BitmapHandle sourceBitmap) {
+            mContext = getContext().getApplicationContext();
+            mUri = uri;
+            mFile = file;
+            mFormat = format;
+            mQuality = quality;
+
+            mState = state;
+            mPreviewWidth = mBitmap.getWidth();
+            mPreviewHeight = mBitmap.getHeight();
+            mPool = mBitmapPool;
+            mPolicy = mSizingPolicy;
+
+            mSourceBitmap = sourceBitmap;
+        }
+
+        @Override
+        protected Uri doInBackground() throws IOException {
+
+            final long startNanos = System.nanoTime();
+            TraceUtil.beginSection("CropImageView save");
+            try {
+                final Bitmap bitmap = mSourceBitmap != null ? cropSourceBitmap() : decodeCrop();
+                mByteCount = bitmap.getByteCount();
+
+                try {
+                    write(bitmap);
+                } finally {
+                    releaseBitmap(bitmap, mPool);
+                }
+            } finally {
+                TraceUtil.endSection();
+                mSaveNanos = System.nanoTime() - startNanos;
+            }
+
+            return mUri != null ? mUri : Uri.fromFile(mFile);
+        }
+
+        @Override
+        protected void onComplete(Uri uri) {
+            onCropSaved(uri, mSaveNanos, mByteCount);
+        }
+
+        @Override
+        protected void onFailed(Exception error) {
+            onCropSaveFailed(error);
+        }
+
+        /**
+         * Draws the oriented crop out of the caller's Bitmap in one pass, at
+         * the size the policy allows, then gives up the reference on it.
+         */
+        private Bitmap cropSourceBitmap() {
+
+            try {
+                final Rect region = mState.getRegion();
+                final int degrees = mState.getRotation();
+                final Point size = CropState.getOutputSize(region, degrees, 0, 0, false);
+                CropState.limitOutputSize(size, mPolicy.getMaxCropPixels());
+                return BitmapUtil.transformBitmap(mSourceBitmap.get(),
+                                                  region,
+                                                  degrees,
+                                                  mState.isFlippedHorizontally(),
+                                                  size.x,
+                                                  size.y,
+                                                  mPool);
+            } finally {
+                mSourceBitmap.release();
+            }
+        }
+
+        /**
+         * Decodes the oriented crop at full resolution, up to the policy's
+         * limit, or, if the format is not supported by BitmapRegionDecoder,
+         * from a decode at preview size, then gives up the reference on the
+         * source.
+         */
+        private Bitmap decodeCrop() throws IOException {
+
+            try {
+                return decodeCropFromSource();
+            } finally {
+                mState.release();
+            }
+        }
+
+        private Bitmap decodeCropFromSource() throws IOException {
+
+            try {
+                return mState.decode(0, 0, false, mPool, mPolicy);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to decode crop region, cropping at preview size instead", e);
+            }
+
+            final int sourceWidth = mState.getSourceWidth();
+            final int sourceHeight = mState.getSourceHeight();
+            final Bitmap preview = BitmapUtil.decodeSampledBitmap(mState.getImageSource(),
+                                                                  sourceWidth,
+                                                                  sourceHeight,
+                                                                  mPreviewWidth,
+                                                                  mPreviewHeight,
+                                                                  mPool);
+            if (preview == null) {
+                throw new IOException("Unable to decode image");
+            }
+
+            final Bitmap croppedBitmap;
+            try {
+                final Rect sourceRegion = mState.getRegion();
+                final Rect region = new Rect(sourceRegion.left * preview.getWidth() / sourceWidth,
+                                             sourceRegion.top * preview.getHeight() / sourceHeight,
+                                             sourceRegion.right * preview.getWidth() / sourceWidth,
+                                             sourceRegion.bottom * preview.getHeight() / sourceHeight);
+                if (!region.intersect(0, 0, preview.getWidth(), preview.getHeight())) {
+                    throw new IOException("The crop window is outside of the image");
+                }
+                croppedBitmap = BitmapUtil.cropBitmap(preview, region, mPool);
+            } finally {
+                releaseBitmap(preview, mPool);
+            }
+
+            return orientCroppedBitmap(croppedBitmap, mState.getRotation(), mState.isFlippedHorizontally(), mPool);
+        }
+
+        private void write(Bitmap bitmap) throws IOException {
+
+            final OutputStream stream;
+            if (mUri != null) {
+                stream = mContext.getContentResolver().openOutputStream(mUri);
+                if (stream == null) {
+                    throw new IOException("Unable to open " + mUri);
+                }
+            } else {
+                stream = new FileOutputStream(mFile);
+            }
+
+            boolean written = false;
+            try {
+                BitmapUtil.compressBitmap(bitmap, mFormat, mQuality, stream);
+                written = true;
+            } finally {
+                // Don't leave a truncated image behind.
+                if (!written && mFile != null) {
+                    mFile.delete();
+                }
+            }
+        }
+    }
 }
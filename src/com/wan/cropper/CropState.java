@@ -0,0 +1,244 @@
+package com.wan.cropper;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.wan.cropper.image.BitmapPool;
+import com.wan.cropper.image.ImageSource;
+import com.wan.cropper.image.SizingPolicy;
+import com.wan.cropper.util.BitmapUtil;
+
+/**
+ * An immutable snapshot of what a CropImageView would crop: the region of the
+ * source image and the orientation to apply to it. It is taken on the main
+ * thread with {@link CropImageView#getCropState()} and can then be handed to
+ * any thread, e.g. to crop the items of a grid in parallel; later changes to
+ * the view do not affect it.
+ * <p>
+ * The snapshot holds its own reference on the ImageSource, so that the view
+ * may be given another image, or cleared, while it is being decoded. Call
+ * {@link #release()} once done with it.
+ */
+public final class CropState {
+
+    private final ImageSource mSource;
+    private final int mSourceWidth;
+    private final int mSourceHeight;
+
+    // The crop in unoriented source pixels.
+    private final Rect mRegion;
+
+    // The rotation, 0 to 359 degrees, and whether the image is mirrored first.
+    private final int mDegrees;
+    private final boolean mFlipHorizontally;
+
+    /**
+     * @param source a reference on the image that this state takes over; may
+     *            be null
+     */
+    CropState(ImageSource source,
+              int sourceWidth,
+              int sourceHeight,
+              Rect region,
+              int degrees,
+              boolean flipHorizontally) {
+        mSource = source;
+        mSourceWidth = sourceWidth;
+        mSourceHeight = sourceHeight;
+        mRegion = new Rect(region);
+        mDegrees = degrees;
+        mFlipHorizontally = flipHorizontally;
+    }
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    /**
+     * Gets the image the crop was taken of; null if it was set as a Bitmap,
+     * in which case {@link #decodeCroppedImage} is not available. It may only
+     * be used until {@link #release()} is called.
+     */
+    public ImageSource getImageSource() {
+        return mSource;
+    }
+
+    public int getSourceWidth() {
+        return mSourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return mSourceHeight;
+    }
+
+    /**
+     * Gets the crop in pixels of the source image as it is stored, i.e.
+     * before rotating or flipping it.
+     *
+     * @return a copy of the region
+     */
+    public Rect getRegion() {
+        return new Rect(mRegion);
+    }
+
+    /**
+     * Gets the rotation, between 0 and 359 degrees, applied after the flip.
+     */
+    public int getRotation() {
+        return mDegrees;
+    }
+
+    public boolean isFlippedHorizontally() {
+        return mFlipHorizontally;
+    }
+
+    /**
+     * Gets the crop relative to the source image at full resolution, in the
+     * orientation it is displayed in.
+     *
+     * @see CropImageView#getActualCropRect()
+     */
+    public RectF getActualCropRect() {
+
+        final RectF actualCropRect = new RectF(mRegion);
+        BitmapUtil.getOrientationMatrix(mDegrees, mFlipHorizontally, mSourceWidth, mSourceHeight)
+                  .mapRect(actualCropRect);
+        return actualCropRect;
+    }
+
+    /**
+     * Decodes the crop from the ImageSource, scaled down to fit within the
+     * given size and oriented. Only the cropped region is decoded, subsampled
+     * as far as the size allows. This blocks; call it from a worker thread.
+     *
+     * @param maxWidth the maximum width of the result; 0 for the size of the
+     *            crop
+     * @param maxHeight the maximum height of the result; 0 for the size of the
+     *            crop
+     * @param pool the pool to take the Bitmaps from and return the
+     *            intermediate one to; may be null
+     * @return the cropped image
+     * @throws IOException if the image could not be decoded
+     * @throws IllegalStateException if there is no ImageSource
+     */
+    public Bitmap decodeCroppedImage(int maxWidth, int maxHeight, BitmapPool pool) throws IOException {
+
+        if (mSource == null) {
+            throw new IllegalStateException("Cannot decode a crop without an ImageSource");
+        }
+        return decode(maxWidth, maxHeight, false, pool, null);
+    }
+
+    /**
+     * Gives up the reference on the ImageSource, which is freed if the view
+     * has moved on from it meanwhile. Call it exactly once, when done with
+     * this snapshot; the crop cannot be decoded afterwards.
+     */
+    public void release() {
+
+        if (mSource != null) {
+            mSource.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CropState[" + mRegion.toShortString() + " of " + mSourceWidth + "x" + mSourceHeight + ", rotation="
+               + mDegrees + ", flipped=" + mFlipHorizontally + "]";
+    }
+
+    // Package-private Methods /////////////////////////////////////////////////
+
+    /**
+     * Decodes the crop from the ImageSource and scales and orients it.
+     *
+     * @param exact whether to scale to exactly the requested size, rather
+     *            than down to fit it
+     * @param policy the policy that caps the size of a crop that is not of
+     *            an exact size; null to leave it as it is
+     * @see #getOutputSize(Rect, int, int, int, boolean)
+     */
+    Bitmap decode(int reqWidth, int reqHeight, boolean exact, BitmapPool pool, SizingPolicy policy)
+            throws IOException {
+
+        final boolean sideways = mDegrees % 180 != 0;
+        final Point size = getOutputSize(mRegion, mDegrees, reqWidth, reqHeight, exact);
+        if (policy != null && !exact) {
+            limitOutputSize(size, policy.getMaxCropPixels());
+        }
+        final int inSampleSize = BitmapUtil.calculateInSampleSizeToFill(mRegion.width(),
+                                                                        mRegion.height(),
+                                                                        sideways ? size.y : size.x,
+                                                                        sideways ? size.x : size.y);
+
+        final Bitmap regionBitmap = BitmapUtil.decodeRegion(mSource, mRegion, inSampleSize, null);
+        if (regionBitmap == null) {
+            throw new IOException("Unable to decode crop region");
+        }
+
+        if (mDegrees == 0 && !mFlipHorizontally
+            && regionBitmap.getWidth() == size.x && regionBitmap.getHeight() == size.y) {
+            return regionBitmap;
+        }
+
+        final Bitmap croppedBitmap = BitmapUtil.transformBitmap(regionBitmap,
+                                                                new Rect(0,
+                                                                         0,
+                                                                         regionBitmap.getWidth(),
+                                                                         regionBitmap.getHeight()),
+                                                                mDegrees,
+                                                                mFlipHorizontally,
+                                                                size.x,
+                                                                size.y,
+                                                                pool);
+        CropImageView.releaseBitmap(regionBitmap, pool);
+        return croppedBitmap;
+    }
+
+    /**
+     * Gets the size of a cropped image, after orientation.
+     *
+     * @param region the region being cropped, before orientation
+     * @param degrees the rotation, 0 to 359 degrees
+     * @param reqWidth the requested width; 0 for the size of the crop
+     * @param reqHeight the requested height; 0 for the size of the crop
+     * @param exact whether to use exactly the requested size, rather than
+     *            scale the crop down to fit it
+     */
+    static Point getOutputSize(Rect region, int degrees, int reqWidth, int reqHeight, boolean exact) {
+
+        if (exact) {
+            return new Point(reqWidth, reqHeight);
+        }
+
+        final boolean sideways = degrees % 180 != 0;
+        final int width = sideways ? region.height() : region.width();
+        final int height = sideways ? region.width() : region.height();
+
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return new Point(width, height);
+        }
+
+        final float scale = Math.min(1f, Math.min((float) reqWidth / width, (float) reqHeight / height));
+        return new Point(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+    }
+
+    /**
+     * Scales a size down, keeping its aspect ratio, until it has no more than
+     * the given number of pixels.
+     *
+     * @param size the size of a cropped image, after orientation
+     * @param maxPixels the largest number of pixels
+     * @see SizingPolicy#getMaxCropPixels()
+     */
+    static void limitOutputSize(Point size, long maxPixels) {
+
+        final long pixels = (long) size.x * size.y;
+        if (pixels > maxPixels) {
+            final double scale = Math.sqrt((double) maxPixels / pixels);
+            size.set(Math.max(1, (int) (size.x * scale)), Math.max(1, (int) (size.y * scale)));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.wan.cropper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+
+import com.wan.cropper.cropwindow.CropWindow;
+import com.wan.cropper.cropwindow.edge.Edge;
+import com.wan.cropper.util.HandleUtil;
+
+/**
+ * Records the touches on a CropImageView to a text file, so that they can be
+ * replayed on a plain JVM by the GestureReplay of the benchmarks module, which
+ * also describes the format. Each gesture is written with the crop window it
+ * started from and the one it ended with. From Jelly Bean on, every frame
+ * of a gesture is written too, between the samples that arrived before it
+ * and those that arrived after. CropOverlayView applies a drag on a frame,
+ * so the replay can group the samples as the device did.
+ * <p>
+ * Feed it every event of the Activity, around dispatching it:
+ *
+ * <pre>
+ * recorder.onTouchEvent(event);
+ * final boolean handled = super.dispatchTouchEvent(event);
+ * recorder.onTouchEventDispatched(event);
+ * </pre>
+ */
+final class GestureRecorder {
+
+	private static final String TAG = GestureRecorder.class.getSimpleName();
+
+	private final CropImageView mView;
+	private final float mHandleRadius;
+	private final int[] mLocation = new int[2];
+
+	private Writer mWriter;
+	private long mDownTime;
+
+	// Whether the crop window still gets the events of the current gesture.
+	private boolean mInGesture;
+
+	// Writes the frames of the current gesture; null before Jelly Bean.
+	private final FrameRecorder mFrameRecorder;
+
+	GestureRecorder(CropImageView view, File file) throws IOException {
+		mView = view;
+		mHandleRadius = HandleUtil.getTargetRadius(view.getContext());
+		mWriter = new BufferedWriter(new FileWriter(file, true));
+		mFrameRecorder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameRecorder()
+				: null;
+	}
+
+	/**
+	 * Records an event, in the coordinates of the crop window, before it is
+	 * dispatched.
+	 *
+	 * @param event
+	 *            the event, in the coordinates of the window
+	 */
+	void onTouchEvent(MotionEvent event) {
+
+		if (mWriter == null)
+			return;
+
+		final CropWindow window = mView.getCropWindow();
+		mView.getLocationInWindow(mLocation);
+		final float offsetX = -mLocation[0];
+		final float offsetY = -mLocation[1];
+
+		final int action = event.getActionMasked();
+		if (action != MotionEvent.ACTION_DOWN && !mInGesture)
+			return;
+
+		switch (action) {
+		case MotionEvent.ACTION_DOWN:
+			mInGesture = true;
+			mDownTime = event.getDownTime();
+			write("bounds", window.getBound(Edge.LEFT), window.getBound(Edge.TOP),
+					window.getBound(Edge.RIGHT), window.getBound(Edge.BOTTOM));
+			write("config", window.getSnapRadius(), mHandleRadius,
+					window.isFixedAspectRatio() ? window.getTargetAspectRatio() : 0);
+			write("window", window.getLeft(), window.getTop(),
+					window.getRight(), window.getBottom());
+			writeSample("d", event.getEventTime(), event.getX() + offsetX,
+					event.getY() + offsetY);
+			if (mFrameRecorder != null)
+				mFrameRecorder.start();
+			break;
+		case MotionEvent.ACTION_MOVE:
+			// Every sample of the batch, as the crop window may use them all.
+			for (int i = 0; i < event.getHistorySize(); i++)
+				writeSample("m", event.getHistoricalEventTime(i),
+						event.getHistoricalX(i) + offsetX,
+						event.getHistoricalY(i) + offsetY);
+			writeSample("m", event.getEventTime(), event.getX() + offsetX,
+					event.getY() + offsetY);
+			break;
+		case MotionEvent.ACTION_POINTER_DOWN:
+			// The image takes a pinch over from the crop window.
+			if (mView.isZoomEnabled())
+				writeSample("c", event.getEventTime(), event.getX() + offsetX,
+						event.getY() + offsetY);
+			break;
+		case MotionEvent.ACTION_UP:
+			writeSample("u", event.getEventTime(), event.getX() + offsetX,
+					event.getY() + offsetY);
+			break;
+		case MotionEvent.ACTION_CANCEL:
+			writeSample("c", event.getEventTime(), event.getX() + offsetX,
+					event.getY() + offsetY);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Records where the crop window ended up once the last event of a gesture
+	 * has been dispatched. A pinch ends the gesture of the crop window; the
+	 * rest of it is not recorded.
+	 */
+	void onTouchEventDispatched(MotionEvent event) {
+
+		if (mWriter == null)
+			return;
+
+		if (!mInGesture)
+			return;
+
+		final int action = event.getActionMasked();
+		if (action == MotionEvent.ACTION_UP
+				|| action == MotionEvent.ACTION_CANCEL
+				|| (action == MotionEvent.ACTION_POINTER_DOWN && mView
+						.isZoomEnabled())) {
+			mInGesture = false;
+			final CropWindow window = mView.getCropWindow();
+			write("expect", window.getLeft(), window.getTop(),
+					window.getRight(), window.getBottom());
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the remaining gestures and closes the file.
+	 */
+	void close() {
+
+		if (mWriter == null)
+			return;
+
+		try {
+			mWriter.close();
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to write gestures", e);
+		}
+		mWriter = null;
+	}
+
+	/**
+	 * Writes a line for every frame until the gesture ends. The frame
+	 * callbacks run in the same phase of a frame as the one CropOverlayView
+	 * applies its drag in, after the input of that frame.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private final class FrameRecorder implements Choreographer.FrameCallback {
+
+		private boolean mPosted;
+
+		void start() {
+			if (!mPosted) {
+				mPosted = true;
+				Choreographer.getInstance().postFrameCallback(this);
+			}
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+
+			if (!mInGesture || mWriter == null) {
+				mPosted = false;
+				return;
+			}
+
+			// Frame times are on the same monotonic clock as event times.
+			writeLine(new StringBuilder("f ")
+					.append(frameTimeNanos / 1000000 - mDownTime));
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+	}
+
+	private void writeSample(String type, long eventTime, float x, float y) {
+		writeLine(new StringBuilder(type).append(' ')
+				.append(eventTime - mDownTime).append(' ').append(x)
+				.append(' ').append(y));
+	}
+
+	private void write(String type, float... values) {
+
+		final StringBuilder line = new StringBuilder(type);
+		for (float value : values)
+			line.append(' ').append(value);
+		writeLine(line);
+	}
+
+	private void writeLine(CharSequence line) {
+
+		if (mWriter == null)
+			return;
+
+		try {
+			mWriter.append(line).append('\n');
+		} catch (IOException e) {
+			// Stop recording rather than leave a gesture half written.
+			Log.w(TAG, "Unable to write gestures", e);
+			close();
+		}
+	}
+
+	private void flush() {
+
+		if (mWriter == null)
+			return;
+
+		try {
+			mWriter.flush();
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to write gestures", e);
+			close();
+		}
+	}
+}
@@ -1,12 +1,21 @@
 package com.wan.cropper;
 
+import java.io.IOException;
+
 import com.wan.cropper.R;
+import com.wan.cropper.image.BackgroundTask;
+import com.wan.cropper.image.ImageSource;
+import com.wan.cropper.util.BitmapUtil;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.Button;
@@ -14,8 +23,11 @@ import android.widget.ImageView;
 
 public class MainActivity extends Activity implements OnClickListener{
 	
+	private static final String TAG = MainActivity.class.getSimpleName();
+
 	private Button portraitBtn,landscapeBtn;
 	private ImageView croppedImageView;
+	private DecodeCropTask decodeTask;
 	
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -27,13 +39,20 @@ public class MainActivity extends Activity implements OnClickListener{
 		landscapeBtn = (Button)findViewById(R.id.landscape_btn);
 		landscapeBtn.setOnClickListener(this);
 		croppedImageView = (ImageView)findViewById(R.id.croppedImage);
-		Intent intent = getIntent();
-		byte buff[] = (byte[]) intent.getSerializableExtra("bitmap");
-		if(buff != null){
-			Bitmap bmp=BitmapFactory.decodeByteArray(buff, 0, buff.length);//±Bitmap
-		if(bmp != null)
-			croppedImageView.setImageBitmap(bmp);
+		Uri uri = getIntent().getData();
+		if(uri != null){
+			decodeTask = new DecodeCropTask(uri);
+			decodeTask.execute();
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		if (decodeTask != null) {
+			decodeTask.cancel();
+			decodeTask = null;
 		}
+		super.onDestroy();
 	}
 
 	@Override
@@ -51,5 +70,61 @@ public class MainActivity extends Activity implements OnClickListener{
 		}
 		startActivity(intent);
 	}
+
+	/**
+	 * Decodes the crop in the background. It is at the resolution of the
+	 * original, so it is decoded no larger than the screen.
+	 */
+	private class DecodeCropTask extends BackgroundTask<Bitmap> {
+
+		private final Context mContext;
+		private final Uri mUri;
+		private final int mReqWidth;
+		private final int mReqHeight;
+
+		DecodeCropTask(Uri uri) {
+			mContext = getApplicationContext();
+			mUri = uri;
+			DisplayMetrics metrics = getResources().getDisplayMetrics();
+			mReqWidth = metrics.widthPixels;
+			mReqHeight = metrics.heightPixels;
+		}
+
+		@Override
+		protected Bitmap doInBackground() throws IOException {
+			// Opened here, so that a task cancelled before it runs has
+			// nothing to release.
+			ImageSource source = ImageSource.fromUri(mContext, mUri);
+			try {
+				BitmapFactory.Options bounds = BitmapUtil.decodeBounds(source);
+				Bitmap bitmap = BitmapUtil.decodeSampledBitmap(source,
+						bounds.outWidth, bounds.outHeight, mReqWidth,
+						mReqHeight, null);
+				if (bitmap == null)
+					throw new IOException("Unable to decode image");
+				return bitmap;
+			} finally {
+				source.release();
+			}
+		}
+
+		@Override
+		protected void onComplete(Bitmap bitmap) {
+			decodeTask = null;
+			croppedImageView.setImageBitmap(bitmap);
+		}
+
+		@Override
+		protected void onFailed(Exception error) {
+			decodeTask = null;
+			Log.w(TAG, "Unable to decode " + mUri, error);
+		}
+
+		@Override
+		protected void onCancelled(Bitmap bitmap) {
+			if (bitmap != null)
+				bitmap.recycle();
+		}
+	}
 	
 }
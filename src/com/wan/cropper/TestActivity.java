@@ -1,6 +1,7 @@
 package com.wan.cropper;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 
 import com.wan.cropper.R;
 
@@ -9,19 +10,35 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.Button;
+import android.widget.Toast;
 
-public class TestActivity extends Activity implements OnClickListener {
+public class TestActivity extends Activity implements OnClickListener,
+		CropImageView.OnCropSavedListener {
+
+	private static final String CROPPED_IMAGE_FILE = "cropped.jpg";
+	private static final int CROPPED_IMAGE_QUALITY = 90;
+
+	// Set to append the gestures on the crop window to GESTURES_FILE in the
+	// external files directory, for the gesture replay of the benchmarks
+	// module.
+	private static final boolean RECORD_GESTURES = false;
+	private static final String GESTURES_FILE = "gestures.txt";
 
 	private CropImageView cropImageView;
 	private Button cropBtn;
-	private Bitmap croppedImage;
 
 	private Drawable testDrawable;
 
+	private GestureRecorder gestureRecorder;
+
+	@SuppressWarnings("deprecation")
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		// TODO Auto-generated method stub
@@ -31,10 +48,18 @@ public class TestActivity extends Activity implements OnClickListener {
 		cropBtn = (Button) findViewById(R.id.Button_crop_test);
 		cropBtn.setOnClickListener(this);
 		cropImageView = (CropImageView) findViewById(R.id.CropImageViewTest);
+		cropImageView.setOnCropSavedListener(this);
 		int drawableId = getIntent().getIntExtra("image",
 				R.drawable.ic_launcher);
 		testDrawable = getResources().getDrawable(drawableId);
-		cropImageView.setImageResource(drawableId);
+		// After a configuration change the image is taken over from the
+		// previous view; its crop window comes back with the saved state.
+		final CropImageView.RetainedImage retainedImage = (CropImageView.RetainedImage)
+				getLastNonConfigurationInstance();
+		if (retainedImage != null)
+			cropImageView.setRetainedImage(retainedImage);
+		else
+			cropImageView.setImageResource(drawableId);
 		System.out.println("111111111111111111111111111=========="
 				+ testDrawable.getIntrinsicWidth() + "========="
 				+ testDrawable.getIntrinsicHeight());
@@ -50,6 +75,41 @@ public class TestActivity extends Activity implements OnClickListener {
 				AppConstants.DEFAULT_ASPECT_RATIO_VALUES_Y);
 		cropImageView.setFixedAspectRatio(true);
 		cropImageView.setGuidelines(0);
+
+		if (RECORD_GESTURES) {
+			try {
+				gestureRecorder = new GestureRecorder(cropImageView, new File(
+						getExternalFilesDir(null), GESTURES_FILE));
+			} catch (IOException e) {
+				Log.w("TestActivity", "Unable to record gestures", e);
+			}
+		}
+	}
+
+	@Override
+	public boolean dispatchTouchEvent(MotionEvent ev) {
+		if (gestureRecorder == null)
+			return super.dispatchTouchEvent(ev);
+
+		gestureRecorder.onTouchEvent(ev);
+		final boolean handled = super.dispatchTouchEvent(ev);
+		gestureRecorder.onTouchEventDispatched(ev);
+		return handled;
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public Object onRetainNonConfigurationInstance() {
+		return cropImageView.retainImage();
+	}
+
+	@Override
+	protected void onDestroy() {
+		if (gestureRecorder != null)
+			gestureRecorder.close();
+		// Frees the image now; a retained one keeps its own references.
+		cropImageView.clearImage();
+		super.onDestroy();
 	}
 
 	@Override
@@ -57,12 +117,14 @@ public class TestActivity extends Activity implements OnClickListener {
 		// TODO Auto-generated method stub
 		switch (v.getId()) {
 		case R.id.Button_crop_test:
-			croppedImage = cropImageView.getCroppedImage();
-			byte buff[] = new byte[2*1024*1024];//ͼж,ԼŸ
-			buff = Bitmap2Bytes(croppedImage);
-			Intent myIntent = new Intent(TestActivity.this,MainActivity.class);
-			myIntent.putExtra("bitmap",buff);
-			startActivity(myIntent);
+			// Cropped, encoded and written in the background; only the Uri is
+			// handed to MainActivity.
+			if (cropImageView.isLoading())
+				break;
+			cropBtn.setEnabled(false);
+			cropImageView.saveCroppedImage(new File(getCacheDir(),
+					CROPPED_IMAGE_FILE), Bitmap.CompressFormat.JPEG,
+					CROPPED_IMAGE_QUALITY);
 			break;
 
 		default:
@@ -70,10 +132,18 @@ public class TestActivity extends Activity implements OnClickListener {
 		}
 	}
 
-	private byte[] Bitmap2Bytes(Bitmap bm) {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		bm.compress(Bitmap.CompressFormat.PNG, 100, baos);
-		return baos.toByteArray();
+	@Override
+	public void onCropSaved(CropImageView view, Uri uri) {
+		cropBtn.setEnabled(true);
+		Intent myIntent = new Intent(TestActivity.this, MainActivity.class);
+		myIntent.setData(uri);
+		startActivity(myIntent);
 	}
 
+	@Override
+	public void onCropSaveFailed(CropImageView view, Exception error) {
+		cropBtn.setEnabled(true);
+		Toast.makeText(this, "Unable to save the cropped image",
+				Toast.LENGTH_SHORT).show();
+	}
 }
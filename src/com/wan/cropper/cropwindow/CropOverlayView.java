@@ -1,27 +1,29 @@
 package com.wan.cropper.cropwindow;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
-import android.util.Pair;
 import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.WindowManager;
 
 import com.wan.cropper.CropImageView;
-import com.wan.cropper.cropwindow.edge.Edge;
-import com.wan.cropper.cropwindow.handle.Handle;
-import com.wan.cropper.util.AspectRatioUtil;
 import com.wan.cropper.util.HandleUtil;
 import com.wan.cropper.util.PaintUtil;
+import com.wan.cropper.util.TraceUtil;
 
 public class CropOverlayView extends View {
 
 	private static final int SNAP_RADIUS_DP = 6;
-	private static final float DEFAULT_SHOW_GUIDELINES_LIMIT = 100;
 
 	private static final float DEFAULT_CORNER_THICKNESS_DP = PaintUtil
 			.getCornerThickness();
@@ -37,6 +39,11 @@ public class CropOverlayView extends View {
 	private static final int GUIDELINES_ON_TOUCH = 1;
 	private static final int GUIDELINES_ON = 2;
 
+	// The refresh rate assumed if the display does not report one.
+	private static final float DEFAULT_REFRESH_RATE = 60;
+
+	private static final Rect EMPTY_RECT = new Rect();
+
 	// The Paint used to draw the white rectangle around the crop area.
 	private Paint mBorderPaint;
 
@@ -49,29 +56,21 @@ public class CropOverlayView extends View {
 	// The Paint used to darken the surrounding areas outside the crop area.
 	private Paint mBackgroundPaint;
 
-	// The bounding box around the Bitmap that we are cropping.
-	private Rect mBitmapRect;
+	// The bounding box around the Bitmap that we are cropping; a copy, so
+	// that the caller can reuse its Rect.
+	private final Rect mBitmapRect = new Rect();
 
 	// The radius of the touch zone (in pixels) around a given Handle.
 	private float mHandleRadius;
 
-	private float mSnapRadius;
-
-	private Pair<Float, Float> mTouchOffset;
-
-	// The Handle that is currently pressed; null if no Handle is pressed.
-	private Handle mPressedHandle;
-
-	private boolean mFixAspectRatio = CropImageView.DEFAULT_FIXED_ASPECT_RATIO;
+	// The crop window geometry, including the pressed Handle and the aspect
+	// ratio it maintains.
+	private final CropWindow mCropWindow = new CropWindow();
 
 	// Floats to save the current aspect ratio of the image
 	private int mAspectRatioX = CropImageView.DEFAULT_ASPECT_RATIO_X;
 	private int mAspectRatioY = CropImageView.DEFAULT_ASPECT_RATIO_Y;
 
-	// The aspect ratio that the crop area should maintain; this variable is
-	// only used when mMaintainAspectRatio is true.
-	private float mTargetAspectRatio = ((float) mAspectRatioX) / mAspectRatioY;
-
 	// Instance variables for customizable attributes
 	private int mGuidelines;
 
@@ -83,6 +82,48 @@ public class CropOverlayView extends View {
 	private float mCornerOffset;
 	private float mCornerLength;
 
+	// The rule of thirds guidelines and the corners as drawLines() points, and
+	// the crop window they were built for. They are only rebuilt when the
+	// window changes, so a frame costs four draw calls.
+	private final float[] mGuidelinePoints = new float[4 * 4];
+	private final float[] mCornerPoints = new float[8 * 4];
+	private final RectF mGeometryRect = new RectF();
+
+	// How far (in pixels) the border and corners reach outside the crop
+	// window, and the area to invalidate after a touch event.
+	private float mInvalidateMargin;
+	private final RectF mDirtyRect = new RectF();
+
+	// The touch samples received since the last frame. They are applied to
+	// the crop window once per frame, by mApplyPendingTouch.
+	private float mPendingTouchX;
+	private float mPendingTouchY;
+	private int mPendingTouchSamples;
+	private boolean mApplyPendingTouchPosted;
+
+	// Whether to apply the mean of a frame's samples rather than the last one.
+	private boolean mTouchSmoothing = false;
+
+	// The number of move samples received and of crop window updates made.
+	private int mTouchSampleCount;
+	private int mDragUpdateCount;
+
+	// Measurements of the current drag, kept only while mCropMetrics is set.
+	private CropImageView.CropMetrics mCropMetrics;
+	private long mPendingTouchTime;
+	private float mFrameMillis;
+	private int mDragFrameCount;
+	private int mDroppedFrameCount;
+	private long mMaxTouchLatency;
+
+	private final Runnable mApplyPendingTouch = new Runnable() {
+		@Override
+		public void run() {
+			mApplyPendingTouchPosted = false;
+			applyPendingTouch();
+		}
+	};
+
 	public CropOverlayView(Context context) {
 		super(context);
 		init(context);
@@ -93,9 +134,11 @@ public class CropOverlayView extends View {
 		init(context);
 	}
 
+
 	@Override
-	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-		initCropWindow(mBitmapRect);
+	protected void onDetachedFromWindow() {
+		cancelPendingTouch();
+		super.onDetachedFromWindow();
 	}
 
 	@Override
@@ -103,27 +146,45 @@ public class CropOverlayView extends View {
 
 		super.onDraw(canvas);
 
+		// Nothing to crop until the image has been loaded.
+		if (!hasBitmapRect())
+			return;
+
+		final long startNanos = mCropMetrics != null ? System.nanoTime() : 0;
+		TraceUtil.beginSection("CropOverlayView draw");
+		try {
+			drawCropWindow(canvas);
+		} finally {
+			TraceUtil.endSection();
+		}
+
+		if (mCropMetrics != null)
+			mCropMetrics.onCropWindowDrawn(System.nanoTime() - startNanos);
+	}
+
+	private void drawCropWindow(Canvas canvas) {
+
+		updateGeometry();
+
 		// Draw translucent background for the cropped area.
 		drawBackground(canvas, mBitmapRect);
 		if (showGuidelines()) {
 			// Determines whether guidelines should be drawn or not
 			if (mGuidelines == GUIDELINES_ON) {
-				drawRuleOfThirdsGuidelines(canvas);
+				canvas.drawLines(mGuidelinePoints, mGuidelinePaint);
 			} else if (mGuidelines == GUIDELINES_ON_TOUCH) {
 				// Draw only when resizing
-				if (mPressedHandle != null)
-					drawRuleOfThirdsGuidelines(canvas);
+				if (mCropWindow.getPressedHandle() != null)
+					canvas.drawLines(mGuidelinePoints, mGuidelinePaint);
 			} else if (mGuidelines == GUIDELINES_OFF) {
 				// Do nothing
 			}
 		}
 
 		// Draws the main crop window border.
-		canvas.drawRect(Edge.LEFT.getCoordinate(), Edge.TOP.getCoordinate(),
-				Edge.RIGHT.getCoordinate(), Edge.BOTTOM.getCoordinate(),
-				mBorderPaint);
+		canvas.drawRect(mGeometryRect, mBorderPaint);
 
-		drawCorners(canvas);
+		canvas.drawLines(mCornerPoints, mCornerPaint);
 	}
 
 	/**
@@ -132,36 +193,140 @@ public class CropOverlayView extends View {
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
 		// If this View is not enabled, don't allow for touch interactions.
-		if (!isEnabled()) {
+		if (!isEnabled() || !hasBitmapRect()) {
 			return false;
 		}
-		switch (event.getAction()) {
+		switch (event.getActionMasked()) {
 		case MotionEvent.ACTION_DOWN:
-			onActionDown(event.getX(), event.getY());
-			return true;
+			cancelPendingTouch();
+			// Touches that miss the window fall through to the image, which
+			// may then be panned.
+			return onActionDown(event.getX(), event.getY());
 		case MotionEvent.ACTION_UP:
+			getParent().requestDisallowInterceptTouchEvent(false);
+			// The window ends up where the finger was lifted.
+			applyPendingTouch();
+			onActionUp();
+			return true;
 		case MotionEvent.ACTION_CANCEL:
 			getParent().requestDisallowInterceptTouchEvent(false);
+			// The parent has taken the gesture over; a sample still waiting
+			// for its frame is stale.
+			cancelPendingTouch();
 			onActionUp();
 			return true;
+		case MotionEvent.ACTION_POINTER_DOWN:
+			// Let the parent see the second finger, so that it can turn the
+			// drag into a pinch of the image. The window stays where it was
+			// when the finger landed.
+			cancelPendingTouch();
+			getParent().requestDisallowInterceptTouchEvent(false);
+			return true;
 		case MotionEvent.ACTION_MOVE:
-			onActionMove(event.getX(), event.getY());
-			getParent().requestDisallowInterceptTouchEvent(true);
+			onActionMove(event);
+			// Only a one-finger drag keeps the parent from intercepting.
+			if (event.getPointerCount() == 1)
+				getParent().requestDisallowInterceptTouchEvent(true);
 			return true;
 		default:
 			return false;
 		}
 	}
 
+	/**
+	 * Sets the bounding box of the displayed Bitmap. The crop window is only
+	 * initialized once the rect is non-empty, i.e. once the image has been
+	 * loaded; until then nothing is drawn. When the rect merely moves or
+	 * changes size, e.g. because the View was resized, the crop window keeps
+	 * its place on the image. Setting the rect it already has does nothing.
+	 */
 	public void setBitmapRect(Rect bitmapRect) {
-		mBitmapRect = bitmapRect;
-		initCropWindow(mBitmapRect);
+
+		if (bitmapRect == null)
+			bitmapRect = EMPTY_RECT;
+		if (mBitmapRect.equals(bitmapRect))
+			return;
+
+		final boolean hadBitmapRect = hasBitmapRect();
+		final float oldLeft = mBitmapRect.left;
+		final float oldTop = mBitmapRect.top;
+		final float scaleX = (float) bitmapRect.width() / mBitmapRect.width();
+		final float scaleY = (float) bitmapRect.height() / mBitmapRect.height();
+
+		mBitmapRect.set(bitmapRect);
+		mCropWindow.setBounds(mBitmapRect.left, mBitmapRect.top,
+				mBitmapRect.right, mBitmapRect.bottom);
+
+		if (hadBitmapRect && hasBitmapRect())
+			mCropWindow.setRect(
+					mBitmapRect.left + (mCropWindow.getLeft() - oldLeft) * scaleX,
+					mBitmapRect.top + (mCropWindow.getTop() - oldTop) * scaleY,
+					mBitmapRect.left + (mCropWindow.getRight() - oldLeft) * scaleX,
+					mBitmapRect.top + (mCropWindow.getBottom() - oldTop) * scaleY);
+		else
+			initCropWindow();
+		invalidate();
+	}
+
+	/**
+	 * Moves the crop window to the given rect, e.g. after the image has been
+	 * rotated underneath it. The rect is clamped to the bitmap rect. If it
+	 * becomes too small, or does not have the fixed aspect ratio (a 90 degree
+	 * rotation swaps it), the crop window is reset instead.
+	 */
+	public void setCropWindowRect(RectF rect) {
+
+		if (!hasBitmapRect())
+			return;
+
+		mCropWindow.setRect(rect.left, rect.top, rect.right, rect.bottom);
+		invalidate();
+	}
+
+	/**
+	 * Sets whether a drag follows the mean of the touch samples received
+	 * during a frame (including the historical ones batched into each
+	 * MotionEvent) instead of the last one. This smooths out jitter at the
+	 * cost of trailing the finger by about half a frame. Off by default.
+	 */
+	public void setTouchSmoothingEnabled(boolean touchSmoothing) {
+		mTouchSmoothing = touchSmoothing;
+	}
+
+	/**
+	 * Sets the listener notified of the time spent drawing, and of the frames
+	 * and touch latency of every drag.
+	 * 
+	 * @param metrics
+	 *            the listener; null to stop measuring
+	 */
+	public void setCropMetrics(CropImageView.CropMetrics metrics) {
+		mCropMetrics = metrics;
+		// Looked up again on the next measured frame.
+		mFrameMillis = 0;
+	}
+
+	/**
+	 * Gets the number of touch move samples received, including historical
+	 * ones. Together with {@link #getDragUpdateCount()} this shows how many
+	 * samples were coalesced into each crop window update.
+	 */
+	public int getTouchSampleCount() {
+		return mTouchSampleCount;
+	}
+
+	/**
+	 * Gets the number of times a drag has updated the crop window; at most
+	 * once per frame.
+	 */
+	public int getDragUpdateCount() {
+		return mDragUpdateCount;
 	}
 
 	public void resetCropOverlayView() {
 
 		if (initializedCropWindow) {
-			initCropWindow(mBitmapRect);
+			initCropWindow();
 			invalidate();
 		}
 	}
@@ -174,17 +339,17 @@ public class CropOverlayView extends View {
 			mGuidelines = guidelines;
 
 			if (initializedCropWindow) {
-				initCropWindow(mBitmapRect);
+				initCropWindow();
 				invalidate();
 			}
 		}
 	}
 
 	public void setFixedAspectRatio(boolean fixAspectRatio) {
-		mFixAspectRatio = fixAspectRatio;
+		mCropWindow.setFixedAspectRatio(fixAspectRatio);
 
 		if (initializedCropWindow) {
-			initCropWindow(mBitmapRect);
+			initCropWindow();
 			invalidate();
 		}
 	}
@@ -195,10 +360,11 @@ public class CropOverlayView extends View {
 					"Cannot set aspect ratio value to a number less than or equal to 0.");
 		else {
 			mAspectRatioX = aspectRatioX;
-			mTargetAspectRatio = ((float) mAspectRatioX) / mAspectRatioY;
+			mCropWindow.setTargetAspectRatio(((float) mAspectRatioX)
+					/ mAspectRatioY);
 
 			if (initializedCropWindow) {
-				initCropWindow(mBitmapRect);
+				initCropWindow();
 				invalidate();
 			}
 		}
@@ -210,10 +376,11 @@ public class CropOverlayView extends View {
 					"Cannot set aspect ratio value to a number less than or equal to 0.");
 		else {
 			mAspectRatioY = aspectRatioY;
-			mTargetAspectRatio = ((float) mAspectRatioX) / mAspectRatioY;
+			mCropWindow.setTargetAspectRatio(((float) mAspectRatioX)
+					/ mAspectRatioY);
 
 			if (initializedCropWindow) {
-				initCropWindow(mBitmapRect);
+				initCropWindow();
 				invalidate();
 			}
 		}
@@ -227,14 +394,15 @@ public class CropOverlayView extends View {
 		else
 			mGuidelines = guidelines;
 
-		mFixAspectRatio = fixAspectRatio;
+		mCropWindow.setFixedAspectRatio(fixAspectRatio);
 
 		if (aspectRatioX <= 0)
 			throw new IllegalArgumentException(
 					"Cannot set aspect ratio value to a number less than or equal to 0.");
 		else {
 			mAspectRatioX = aspectRatioX;
-			mTargetAspectRatio = ((float) mAspectRatioX) / mAspectRatioY;
+			mCropWindow.setTargetAspectRatio(((float) mAspectRatioX)
+					/ mAspectRatioY);
 		}
 
 		if (aspectRatioY <= 0)
@@ -242,7 +410,8 @@ public class CropOverlayView extends View {
 					"Cannot set aspect ratio value to a number less than or equal to 0.");
 		else {
 			mAspectRatioY = aspectRatioY;
-			mTargetAspectRatio = ((float) mAspectRatioX) / mAspectRatioY;
+			mCropWindow.setTargetAspectRatio(((float) mAspectRatioX)
+					/ mAspectRatioY);
 		}
 
 	}
@@ -254,8 +423,12 @@ public class CropOverlayView extends View {
 
 		mHandleRadius = HandleUtil.getTargetRadius(context);
 
-		mSnapRadius = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
-				SNAP_RADIUS_DP, displayMetrics);
+		mCropWindow.setSnapRadius(TypedValue.applyDimension(
+				TypedValue.COMPLEX_UNIT_DIP, SNAP_RADIUS_DP, displayMetrics));
+		mCropWindow
+				.setFixedAspectRatio(CropImageView.DEFAULT_FIXED_ASPECT_RATIO);
+		mCropWindow.setTargetAspectRatio(((float) mAspectRatioX)
+				/ mAspectRatioY);
 
 		mBorderPaint = PaintUtil.newBorderPaint(context);
 		mGuidelinePaint = PaintUtil.newGuidelinePaint();
@@ -271,124 +444,146 @@ public class CropOverlayView extends View {
 		mCornerLength = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
 				DEFAULT_CORNER_LENGTH_DP, displayMetrics);
 
+		// Plus a pixel for anti-aliasing.
+		mInvalidateMargin = Math.max(Math.max(mCornerExtension, mCornerOffset
+				+ mCornerPaint.getStrokeWidth() / 2), mBorderPaint
+				.getStrokeWidth() / 2) + 1;
+
 		// Sets guidelines to default until specified otherwise
 		mGuidelines = CropImageView.DEFAULT_GUIDELINES;
 	}
 
-	private void initCropWindow(Rect bitmapRect) {
+	private boolean hasBitmapRect() {
+		return !mBitmapRect.isEmpty();
+	}
+
+	private void initCropWindow() {
+
+		// Deferred until the image has been loaded.
+		if (!hasBitmapRect())
+			return;
 
 		// Tells the attribute functions the crop window has already been
 		// initialized
 		if (initializedCropWindow == false)
 			initializedCropWindow = true;
 
-		if (mFixAspectRatio) {
-
-			// If the image aspect ratio is wider than the crop aspect ratio,
-			// then the image height is the determining initial length. Else,
-			// vice-versa.
-			if (AspectRatioUtil.calculateAspectRatio(bitmapRect) > mTargetAspectRatio) {
-
-				Edge.TOP.setCoordinate(bitmapRect.top);
-				Edge.BOTTOM.setCoordinate(bitmapRect.bottom);
-
-				final float centerX = getWidth() / 2f;
-
-				// Limits the aspect ratio to no less than 40 wide or 40 tall
-				final float cropWidth = Math
-						.max(Edge.MIN_CROP_LENGTH_PX, AspectRatioUtil
-								.calculateWidth(Edge.TOP.getCoordinate(),
-										Edge.BOTTOM.getCoordinate(),
-										mTargetAspectRatio));
+		mCropWindow.reset();
+	}
 
-				// Create new TargetAspectRatio if the original one does not fit
-				// the screen
-				if (cropWidth == Edge.MIN_CROP_LENGTH_PX)
-					mTargetAspectRatio = (Edge.MIN_CROP_LENGTH_PX)
-							/ (Edge.BOTTOM.getCoordinate() - Edge.TOP
-									.getCoordinate());
+	/**
+	 * Gets the crop window geometry of this View, in View pixels.
+	 */
+	public CropWindow getCropWindow() {
+		return mCropWindow;
+	}
 
-				final float halfCropWidth = cropWidth / 2f;
-				Edge.LEFT.setCoordinate(centerX - halfCropWidth);
-				Edge.RIGHT.setCoordinate(centerX + halfCropWidth);
+	public boolean showGuidelines() {
+		return mCropWindow.showGuidelines();
+	}
 
-			} else {
+	/**
+	 * Rebuilds the line points if the crop window has changed since the last
+	 * frame.
+	 */
+	private void updateGeometry() {
 
-				Edge.LEFT.setCoordinate(bitmapRect.left);
-				Edge.RIGHT.setCoordinate(bitmapRect.right);
+		final float left = mCropWindow.getLeft();
+		final float top = mCropWindow.getTop();
+		final float right = mCropWindow.getRight();
+		final float bottom = mCropWindow.getBottom();
 
-				final float centerY = getHeight() / 2f;
+		if (left == mGeometryRect.left && top == mGeometryRect.top
+				&& right == mGeometryRect.right
+				&& bottom == mGeometryRect.bottom)
+			return;
 
-				// Limits the aspect ratio to no less than 40 wide or 40 tall
-				final float cropHeight = Math
-						.max(Edge.MIN_CROP_LENGTH_PX, AspectRatioUtil
-								.calculateHeight(Edge.LEFT.getCoordinate(),
-										Edge.RIGHT.getCoordinate(),
-										mTargetAspectRatio));
+		mGeometryRect.set(left, top, right, bottom);
+		buildGuidelinePoints(left, top, right, bottom);
+		buildCornerPoints(left, top, right, bottom);
+	}
 
-				// Create new TargetAspectRatio if the original one does not fit
-				// the screen
-				if (cropHeight == Edge.MIN_CROP_LENGTH_PX)
-					mTargetAspectRatio = (Edge.RIGHT.getCoordinate() - Edge.LEFT
-							.getCoordinate()) / Edge.MIN_CROP_LENGTH_PX;
+	private void buildGuidelinePoints(float left, float top, float right,
+			float bottom) {
 
-				final float halfCropHeight = cropHeight / 2f;
-				Edge.TOP.setCoordinate(centerY - halfCropHeight);
-				Edge.BOTTOM.setCoordinate(centerY + halfCropHeight);
-			}
+		final float[] points = mGuidelinePoints;
 
-		} else { // ... do not fix aspect ratio...
+		// Vertical guidelines.
+		final float oneThirdCropWidth = (right - left) / 3;
 
-			// Initialize crop window to have 10% padding w/ respect to image.
-			final float horizontalPadding = 0.1f * bitmapRect.width();
-			final float verticalPadding = 0.1f * bitmapRect.height();
+		final float x1 = left + oneThirdCropWidth;
+		final float x2 = right - oneThirdCropWidth;
+		setLine(points, 0, x1, top, x1, bottom);
+		setLine(points, 1, x2, top, x2, bottom);
 
-			Edge.LEFT.setCoordinate(bitmapRect.left + horizontalPadding);
-			Edge.TOP.setCoordinate(bitmapRect.top + verticalPadding);
-			Edge.RIGHT.setCoordinate(bitmapRect.right - horizontalPadding);
-			Edge.BOTTOM.setCoordinate(bitmapRect.bottom - verticalPadding);
-		}
-	}
+		// Horizontal guidelines.
+		final float oneThirdCropHeight = (bottom - top) / 3;
 
-	public static boolean showGuidelines() {
-		if ((Math.abs(Edge.LEFT.getCoordinate() - Edge.RIGHT.getCoordinate()) < DEFAULT_SHOW_GUIDELINES_LIMIT)
-				|| (Math.abs(Edge.TOP.getCoordinate()
-						- Edge.BOTTOM.getCoordinate()) < DEFAULT_SHOW_GUIDELINES_LIMIT))
-			return false;
-		else
-			return true;
+		final float y1 = top + oneThirdCropHeight;
+		final float y2 = bottom - oneThirdCropHeight;
+		setLine(points, 2, left, y1, right, y1);
+		setLine(points, 3, left, y2, right, y2);
 	}
 
-	private void drawRuleOfThirdsGuidelines(Canvas canvas) {
+	private void buildCornerPoints(float left, float top, float right,
+			float bottom) {
 
-		final float left = Edge.LEFT.getCoordinate();
-		final float top = Edge.TOP.getCoordinate();
-		final float right = Edge.RIGHT.getCoordinate();
-		final float bottom = Edge.BOTTOM.getCoordinate();
+		final float[] points = mCornerPoints;
 
-		// Draw vertical guidelines.
-		final float oneThirdCropWidth = Edge.getWidth() / 3;
+		// Top left
+		setLine(points, 0, left - mCornerOffset, top - mCornerExtension, left
+				- mCornerOffset, top + mCornerLength);
+		setLine(points, 1, left, top - mCornerOffset, left + mCornerLength, top
+				- mCornerOffset);
 
-		final float x1 = left + oneThirdCropWidth;
-		canvas.drawLine(x1, top, x1, bottom, mGuidelinePaint);
-		final float x2 = right - oneThirdCropWidth;
-		canvas.drawLine(x2, top, x2, bottom, mGuidelinePaint);
+		// Top right
+		setLine(points, 2, right + mCornerOffset, top - mCornerExtension, right
+				+ mCornerOffset, top + mCornerLength);
+		setLine(points, 3, right, top - mCornerOffset, right - mCornerLength,
+				top - mCornerOffset);
 
-		// Draw horizontal guidelines.
-		final float oneThirdCropHeight = Edge.getHeight() / 3;
+		// Bottom left
+		setLine(points, 4, left - mCornerOffset, bottom + mCornerExtension,
+				left - mCornerOffset, bottom - mCornerLength);
+		setLine(points, 5, left, bottom + mCornerOffset, left + mCornerLength,
+				bottom + mCornerOffset);
+
+		// Bottom right
+		setLine(points, 6, right + mCornerOffset, bottom + mCornerExtension,
+				right + mCornerOffset, bottom - mCornerLength);
+		setLine(points, 7, right, bottom + mCornerOffset, right - mCornerLength,
+				bottom + mCornerOffset);
+	}
 
-		final float y1 = top + oneThirdCropHeight;
-		canvas.drawLine(left, y1, right, y1, mGuidelinePaint);
-		final float y2 = bottom - oneThirdCropHeight;
-		canvas.drawLine(left, y2, right, y2, mGuidelinePaint);
+	private static void setLine(float[] points, int line, float startX,
+			float startY, float stopX, float stopY) {
+		final int i = line * 4;
+		points[i] = startX;
+		points[i + 1] = startY;
+		points[i + 2] = stopX;
+		points[i + 3] = stopY;
 	}
 
 	private void drawBackground(Canvas canvas, Rect bitmapRect) {
 
-		final float left = Edge.LEFT.getCoordinate();
-		final float top = Edge.TOP.getCoordinate();
-		final float right = Edge.RIGHT.getCoordinate();
-		final float bottom = Edge.BOTTOM.getCoordinate();
+		// Hardware acceleration only supports clipping out a rect from Jelly
+		// Bean MR2 on.
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+				|| !canvas.isHardwareAccelerated()) {
+
+			// Darken the whole image except the crop window in one draw.
+			final int saveCount = canvas.save();
+			canvas.clipRect(mGeometryRect, Region.Op.DIFFERENCE);
+			canvas.drawRect(bitmapRect.left, bitmapRect.top, bitmapRect.right,
+					bitmapRect.bottom, mBackgroundPaint);
+			canvas.restoreToCount(saveCount);
+			return;
+		}
+
+		final float left = mGeometryRect.left;
+		final float top = mGeometryRect.top;
+		final float right = mGeometryRect.right;
+		final float bottom = mGeometryRect.bottom;
 
 		// Draw "top", "bottom", "left", then "right" quadrants.
 		canvas.drawRect(bitmapRect.left, bitmapRect.top, bitmapRect.right, top,
@@ -399,104 +594,189 @@ public class CropOverlayView extends View {
 		canvas.drawRect(right, top, bitmapRect.right, bottom, mBackgroundPaint);
 	}
 
-	private void drawCorners(Canvas canvas) {
-		final float left = Edge.LEFT.getCoordinate();
-		final float top = Edge.TOP.getCoordinate();
-		final float right = Edge.RIGHT.getCoordinate();
-		final float bottom = Edge.BOTTOM.getCoordinate();
-
-		// Top left
-		canvas.drawLine(left - mCornerOffset, top - mCornerExtension, left
-				- mCornerOffset, top + mCornerLength, mCornerPaint);
-		canvas.drawLine(left, top - mCornerOffset, left + mCornerLength, top
-				- mCornerOffset, mCornerPaint);
-		// Top right
-		canvas.drawLine(right + mCornerOffset, top - mCornerExtension, right
-				+ mCornerOffset, top + mCornerLength, mCornerPaint);
-		canvas.drawLine(right, top - mCornerOffset, right - mCornerLength, top
-				- mCornerOffset, mCornerPaint);
-
-		// Bottom left
-		canvas.drawLine(left - mCornerOffset, bottom + mCornerExtension, left
-				- mCornerOffset, bottom - mCornerLength, mCornerPaint);
-		canvas.drawLine(left, bottom + mCornerOffset, left + mCornerLength,
-				bottom + mCornerOffset, mCornerPaint);
-
-		// Bottom left
-		canvas.drawLine(right + mCornerOffset, bottom + mCornerExtension, right
-				+ mCornerOffset, bottom - mCornerLength, mCornerPaint);
-		canvas.drawLine(right, bottom + mCornerOffset, right - mCornerLength,
-				bottom + mCornerOffset, mCornerPaint);
-
-	}
-
 	/**
 	 * Handles a {@link MotionEvent#ACTION_DOWN} event.
 	 * @param x
 	 *            the x-coordinate of the down action
 	 * @param y
 	 *            the y-coordinate of the down action
+	 * @return true if a handle of the crop window was pressed
+	 */
+	private boolean onActionDown(float x, float y) {
+
+		// Only the guidelines inside the window may appear.
+		if (mCropWindow.press(x, y, mHandleRadius)) {
+			mDragFrameCount = 0;
+			mDroppedFrameCount = 0;
+			mMaxTouchLatency = 0;
+			setDirtyRectToCropWindow();
+			invalidateDirtyRect();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Handles a {@link MotionEvent#ACTION_UP} or
+	 * {@link MotionEvent#ACTION_CANCEL} event.
 	 */
-	private void onActionDown(float x, float y) {
+	private void onActionUp() {
 
-		final float left = Edge.LEFT.getCoordinate();
-		final float top = Edge.TOP.getCoordinate();
-		final float right = Edge.RIGHT.getCoordinate();
-		final float bottom = Edge.BOTTOM.getCoordinate();
+		if (mCropMetrics != null && mDragFrameCount > 0)
+			mCropMetrics.onDragFinished(mDragFrameCount, mDroppedFrameCount,
+					mMaxTouchLatency);
 
-		mPressedHandle = HandleUtil.getPressedHandle(x, y, left, top, right,
-				bottom, mHandleRadius);
+		if (mCropWindow.release()) {
+			setDirtyRectToCropWindow();
+			invalidateDirtyRect();
+		}
+	}
+
+	/**
+	 * Handles a {@link MotionEvent#ACTION_MOVE} event. The samples are only
+	 * collected here; the crop window is updated once per frame.
+	 * 
+	 * @param event
+	 *            the move event
+	 */
+	private void onActionMove(MotionEvent event) {
 
-		if (mPressedHandle == null)
+		if (mCropWindow.getPressedHandle() == null)
 			return;
 
-		// Calculate the offset of the touch point from the precise location
-		// of the handle. Save these values in a member variable since we want
-		// to maintain this offset as we drag the handle.
-		mTouchOffset = HandleUtil.getOffset(mPressedHandle, x, y, left, top,
-				right, bottom);
+		final int historySize = event.getHistorySize();
+		mTouchSampleCount += historySize + 1;
 
-		invalidate();
+		// The latency of a frame is counted from its oldest sample.
+		if (mPendingTouchSamples == 0)
+			mPendingTouchTime = historySize > 0 ? event
+					.getHistoricalEventTime(0) : event.getEventTime();
+
+		if (mTouchSmoothing) {
+			for (int i = 0; i < historySize; i++) {
+				mPendingTouchX += event.getHistoricalX(i);
+				mPendingTouchY += event.getHistoricalY(i);
+			}
+			mPendingTouchX += event.getX();
+			mPendingTouchY += event.getY();
+			mPendingTouchSamples += historySize + 1;
+		} else {
+			mPendingTouchX = event.getX();
+			mPendingTouchY = event.getY();
+			mPendingTouchSamples = 1;
+		}
+
+		if (!mApplyPendingTouchPosted) {
+			mApplyPendingTouchPosted = true;
+			postOnNextFrame(mApplyPendingTouch);
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private void postOnNextFrame(Runnable action) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+			postOnAnimation(action);
+		else
+			post(action);
 	}
 
 	/**
-	 * Handles a {@link MotionEvent#ACTION_UP} or
-	 * {@link MotionEvent#ACTION_CANCEL} event.
+	 * Drags the crop window to the touch samples collected since the last
+	 * frame, if any.
 	 */
-	private void onActionUp() {
+	private void applyPendingTouch() {
 
-		if (mPressedHandle == null)
+		if (mPendingTouchSamples == 0)
 			return;
 
-		mPressedHandle = null;
+		final float x = mPendingTouchX / mPendingTouchSamples;
+		final float y = mPendingTouchY / mPendingTouchSamples;
+		mPendingTouchX = 0;
+		mPendingTouchY = 0;
+		mPendingTouchSamples = 0;
 
-		invalidate();
+		if (mCropMetrics != null)
+			measureTouchLatency();
+
+		TraceUtil.beginSection("CropOverlayView drag");
+		try {
+			dragTo(x, y);
+		} finally {
+			TraceUtil.endSection();
+		}
 	}
 
 	/**
-	 * Handles a {@link MotionEvent#ACTION_MOVE} event.
-	 * 
-	 * @param x
-	 *            the x-coordinate of the move event
-	 * @param y
-	 *            the y-coordinate of the move event
+	 * Counts the frame the pending touch is applied in, and the frames it
+	 * waited for beyond the first as dropped.
 	 */
-	private void onActionMove(float x, float y) {
-		if (mPressedHandle == null)
-			return;
-		// Adjust the coordinates for the finger position's offset (i.e. the
-		// distance from the initial touch to the precise handle location).
-		// We want to maintain the initial touch's distance to the pressed
-		// handle so that the crop window size does not "jump".
-		x += mTouchOffset.first;
-		y += mTouchOffset.second;
-		// Calculate the new crop window size/position.
-		if (mFixAspectRatio) {
-			mPressedHandle.updateCropWindow(x, y, mTargetAspectRatio,
-					mBitmapRect, mSnapRadius);
-		} else {
-			mPressedHandle.updateCropWindow(x, y, mBitmapRect, mSnapRadius);
+	private void measureTouchLatency() {
+
+		final long latency = SystemClock.uptimeMillis() - mPendingTouchTime;
+		if (mFrameMillis == 0)
+			mFrameMillis = getFrameMillis();
+		mDragFrameCount++;
+		mDroppedFrameCount += Math.max(0, (int) (latency / mFrameMillis) - 1);
+		mMaxTouchLatency = Math.max(mMaxTouchLatency, latency);
+	}
+
+	/**
+	 * Gets the frame length (in ms) of the display. It is only looked up
+	 * while measuring, and then kept until the metrics listener is set again.
+	 */
+	private float getFrameMillis() {
+
+		final WindowManager windowManager = (WindowManager) getContext()
+				.getSystemService(Context.WINDOW_SERVICE);
+		final float refreshRate = windowManager.getDefaultDisplay()
+				.getRefreshRate();
+		return 1000f / (refreshRate > 0 ? refreshRate : DEFAULT_REFRESH_RATE);
+	}
+
+	private void cancelPendingTouch() {
+
+		if (mApplyPendingTouchPosted) {
+			removeCallbacks(mApplyPendingTouch);
+			mApplyPendingTouchPosted = false;
 		}
-		invalidate();
+		mPendingTouchX = 0;
+		mPendingTouchY = 0;
+		mPendingTouchSamples = 0;
+	}
+
+	private void dragTo(float x, float y) {
+
+		if (mCropWindow.getPressedHandle() == null)
+			return;
+
+		mDragUpdateCount++;
+
+		// Everything outside both the old and the new window, and their
+		// borders, stays the same.
+		setDirtyRectToCropWindow();
+
+		// The window keeps the distance from the initial touch to the precise
+		// handle location, so that the crop window size does not "jump".
+		mCropWindow.drag(x, y);
+
+		mDirtyRect.union(mCropWindow.getLeft(), mCropWindow.getTop(),
+				mCropWindow.getRight(), mCropWindow.getBottom());
+		invalidateDirtyRect();
+	}
+
+	private void setDirtyRectToCropWindow() {
+		mDirtyRect.set(mCropWindow.getLeft(), mCropWindow.getTop(),
+				mCropWindow.getRight(), mCropWindow.getBottom());
+	}
+
+	/**
+	 * Invalidates mDirtyRect, grown by how far the border and corners reach
+	 * outside of it.
+	 */
+	private void invalidateDirtyRect() {
+		invalidate((int) Math.floor(mDirtyRect.left - mInvalidateMargin),
+				(int) Math.floor(mDirtyRect.top - mInvalidateMargin),
+				(int) Math.ceil(mDirtyRect.right + mInvalidateMargin),
+				(int) Math.ceil(mDirtyRect.bottom + mInvalidateMargin));
 	}
 }
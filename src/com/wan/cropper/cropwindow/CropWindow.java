@@ -0,0 +1,538 @@
+package com.wan.cropper.cropwindow;
+
+import com.wan.cropper.cropwindow.edge.Edge;
+import com.wan.cropper.cropwindow.handle.Handle;
+import com.wan.cropper.util.AspectRatioUtil;
+
+/**
+ * The geometry of a crop window: its edges, the image bounds it is confined
+ * to and the handle being dragged. This class is plain Java and has no
+ * dependency on Views or any other Android class, so each CropOverlayView owns
+ * its own instance and the crop logic can be driven (and tested) without a
+ * device.
+ * <p>
+ * All coordinates are in the same space, which for a CropOverlayView is its
+ * View pixels.
+ */
+public class CropWindow {
+
+    // Private Constants ///////////////////////////////////////////////////////
+
+    // Below this width or height the guidelines are hidden and the center
+    // handle takes precedence over the side handles.
+    private static final float SHOW_GUIDELINES_LIMIT = 100;
+
+    // How far (relative) a rect may be off the fixed aspect ratio before
+    // setRect() resets the window; covers rounding of the image bounds.
+    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+    // Member Variables ////////////////////////////////////////////////////////
+
+    // The edge coordinates and the image bounds, indexed by Edge.ordinal().
+    private final float[] mCoordinates = new float[4];
+    private final float[] mBounds = new float[4];
+
+    // The maximum distance (in pixels) at which the edges snap to the bounds.
+    private float mSnapRadius;
+
+    private boolean mFixAspectRatio;
+
+    // The aspect ratio that the crop window should maintain; only used when
+    // mFixAspectRatio is true.
+    private float mTargetAspectRatio = 1;
+
+    // The Handle that is currently pressed; null if no Handle is pressed.
+    private Handle mPressedHandle;
+
+    // The offset of the touch point from the precise location of the pressed
+    // handle, kept while dragging so that the window does not "jump".
+    private float mTouchOffsetX;
+    private float mTouchOffsetY;
+
+    // The constraints on each edge while a handle is dragged, indexed by
+    // Edge.ordinal(): the coordinate past which it snaps to its bound, and
+    // the furthest it may move in before the window becomes too small. An
+    // edge is only ever dragged while its opposite edge stays put, so both
+    // are solved once when the handle is pressed; see updateConstraints().
+    private final float[] mSnapThresholds = new float[4];
+    private final float[] mSizeLimits = new float[4];
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    /**
+     * Sets the bounds of the image that the crop window is confined to. The
+     * window itself is not changed; call {@link #reset()} to fit it.
+     */
+    public void setBounds(float left, float top, float right, float bottom) {
+        mBounds[Edge.LEFT.ordinal()] = left;
+        mBounds[Edge.TOP.ordinal()] = top;
+        mBounds[Edge.RIGHT.ordinal()] = right;
+        mBounds[Edge.BOTTOM.ordinal()] = bottom;
+        updateConstraintsIfPressed();
+    }
+
+    /**
+     * Gets the bound of the image on the side of the given Edge.
+     */
+    public float getBound(Edge edge) {
+        return mBounds[edge.ordinal()];
+    }
+
+    /**
+     * Whether the bounds have been set to a non-empty rectangle.
+     */
+    public boolean hasBounds() {
+        return getBound(Edge.RIGHT) > getBound(Edge.LEFT) && getBound(Edge.BOTTOM) > getBound(Edge.TOP);
+    }
+
+    public float getCoordinate(Edge edge) {
+        return mCoordinates[edge.ordinal()];
+    }
+
+    /**
+     * Sets a single edge. Unlike the other setters this does not re-solve the
+     * constraints of a drag in progress, as it is how the drag moves the
+     * edges.
+     */
+    public void setCoordinate(Edge edge, float coordinate) {
+        mCoordinates[edge.ordinal()] = coordinate;
+    }
+
+    public float getLeft() {
+        return mCoordinates[Edge.LEFT.ordinal()];
+    }
+
+    public float getTop() {
+        return mCoordinates[Edge.TOP.ordinal()];
+    }
+
+    public float getRight() {
+        return mCoordinates[Edge.RIGHT.ordinal()];
+    }
+
+    public float getBottom() {
+        return mCoordinates[Edge.BOTTOM.ordinal()];
+    }
+
+    public float getWidth() {
+        return getRight() - getLeft();
+    }
+
+    public float getHeight() {
+        return getBottom() - getTop();
+    }
+
+    /**
+     * Sets all four edges at once, without any checks.
+     */
+    public void set(float left, float top, float right, float bottom) {
+        mCoordinates[Edge.LEFT.ordinal()] = left;
+        mCoordinates[Edge.TOP.ordinal()] = top;
+        mCoordinates[Edge.RIGHT.ordinal()] = right;
+        mCoordinates[Edge.BOTTOM.ordinal()] = bottom;
+        updateConstraintsIfPressed();
+    }
+
+    /**
+     * Moves the crop window to the given rect, clamped to the bounds. If it
+     * becomes too small, or does not have the fixed aspect ratio, the window
+     * is reset instead.
+     *
+     * @return true if the rect was applied; false if the window was reset
+     */
+    public boolean setRect(float left, float top, float right, float bottom) {
+
+        final float clampedLeft = Math.max(left, getBound(Edge.LEFT));
+        final float clampedTop = Math.max(top, getBound(Edge.TOP));
+        final float clampedRight = Math.min(right, getBound(Edge.RIGHT));
+        final float clampedBottom = Math.min(bottom, getBound(Edge.BOTTOM));
+
+        final float width = clampedRight - clampedLeft;
+        final float height = clampedBottom - clampedTop;
+
+        if (width < Edge.MIN_CROP_LENGTH_PX
+            || height < Edge.MIN_CROP_LENGTH_PX
+            || (mFixAspectRatio
+                && Math.abs(width / height - mTargetAspectRatio) > ASPECT_RATIO_TOLERANCE * mTargetAspectRatio)) {
+            reset();
+            return false;
+        }
+
+        set(clampedLeft, clampedTop, clampedRight, clampedBottom);
+        return true;
+    }
+
+    public float getSnapRadius() {
+        return mSnapRadius;
+    }
+
+    public void setSnapRadius(float snapRadius) {
+        mSnapRadius = snapRadius;
+        updateConstraintsIfPressed();
+    }
+
+    public boolean isFixedAspectRatio() {
+        return mFixAspectRatio;
+    }
+
+    public void setFixedAspectRatio(boolean fixAspectRatio) {
+        mFixAspectRatio = fixAspectRatio;
+        updateConstraintsIfPressed();
+    }
+
+    /**
+     * Gets the aspect ratio the window maintains. This can differ from the one
+     * that was set if the bounds were too small for it; see {@link #reset()}.
+     */
+    public float getTargetAspectRatio() {
+        return mTargetAspectRatio;
+    }
+
+    public void setTargetAspectRatio(float targetAspectRatio) {
+        mTargetAspectRatio = targetAspectRatio;
+        updateConstraintsIfPressed();
+    }
+
+    /**
+     * Fits the crop window to the bounds: with a fixed aspect ratio, the
+     * largest centered window of that ratio; otherwise the bounds with 10%
+     * padding. Does nothing if the bounds are empty.
+     */
+    public void reset() {
+
+        if (!hasBounds())
+            return;
+
+        final float boundsLeft = getBound(Edge.LEFT);
+        final float boundsTop = getBound(Edge.TOP);
+        final float boundsRight = getBound(Edge.RIGHT);
+        final float boundsBottom = getBound(Edge.BOTTOM);
+
+        if (mFixAspectRatio) {
+
+            // If the image aspect ratio is wider than the crop aspect ratio,
+            // then the image height is the determining initial length. Else,
+            // vice-versa.
+            if (AspectRatioUtil.calculateAspectRatio(boundsLeft, boundsTop, boundsRight, boundsBottom) > mTargetAspectRatio) {
+
+                setCoordinate(Edge.TOP, boundsTop);
+                setCoordinate(Edge.BOTTOM, boundsBottom);
+
+                final float centerX = (boundsLeft + boundsRight) / 2f;
+
+                // Limits the aspect ratio to no less than 40 wide or 40 tall
+                final float cropWidth = Math.max(Edge.MIN_CROP_LENGTH_PX,
+                                                 AspectRatioUtil.calculateWidth(boundsTop,
+                                                                                boundsBottom,
+                                                                                mTargetAspectRatio));
+
+                // Create new TargetAspectRatio if the original one does not fit
+                // the screen
+                if (cropWidth == Edge.MIN_CROP_LENGTH_PX)
+                    mTargetAspectRatio = (Edge.MIN_CROP_LENGTH_PX) / (boundsBottom - boundsTop);
+
+                final float halfCropWidth = cropWidth / 2f;
+                setCoordinate(Edge.LEFT, centerX - halfCropWidth);
+                setCoordinate(Edge.RIGHT, centerX + halfCropWidth);
+
+            } else {
+
+                setCoordinate(Edge.LEFT, boundsLeft);
+                setCoordinate(Edge.RIGHT, boundsRight);
+
+                final float centerY = (boundsTop + boundsBottom) / 2f;
+
+                // Limits the aspect ratio to no less than 40 wide or 40 tall
+                final float cropHeight = Math.max(Edge.MIN_CROP_LENGTH_PX,
+                                                  AspectRatioUtil.calculateHeight(boundsLeft,
+                                                                                  boundsRight,
+                                                                                  mTargetAspectRatio));
+
+                // Create new TargetAspectRatio if the original one does not fit
+                // the screen
+                if (cropHeight == Edge.MIN_CROP_LENGTH_PX)
+                    mTargetAspectRatio = (boundsRight - boundsLeft) / Edge.MIN_CROP_LENGTH_PX;
+
+                final float halfCropHeight = cropHeight / 2f;
+                setCoordinate(Edge.TOP, centerY - halfCropHeight);
+                setCoordinate(Edge.BOTTOM, centerY + halfCropHeight);
+            }
+
+            updateConstraintsIfPressed();
+
+        } else { // ... do not fix aspect ratio...
+
+            // Initialize crop window to have 10% padding w/ respect to image.
+            final float horizontalPadding = 0.1f * (boundsRight - boundsLeft);
+            final float verticalPadding = 0.1f * (boundsBottom - boundsTop);
+
+            set(boundsLeft + horizontalPadding,
+                boundsTop + verticalPadding,
+                boundsRight - horizontalPadding,
+                boundsBottom - verticalPadding);
+        }
+    }
+
+    /**
+     * Whether the window is large enough for the rule of thirds guidelines.
+     */
+    public boolean showGuidelines() {
+        return Math.abs(getWidth()) >= SHOW_GUIDELINES_LIMIT && Math.abs(getHeight()) >= SHOW_GUIDELINES_LIMIT;
+    }
+
+    /**
+     * Determines which, if any, of the handles are at the given point.
+     *
+     * @param x the x-coordinate of the touch point
+     * @param y the y-coordinate of the touch point
+     * @param targetRadius the target radius in pixels
+     * @return the Handle at the point; null if there is none
+     */
+    public Handle getHandleAt(float x, float y, float targetRadius) {
+
+        final float left = getLeft();
+        final float top = getTop();
+        final float right = getRight();
+        final float bottom = getBottom();
+
+        // If the window is small, focus on the center handle so the user can
+        // move it; otherwise focus on the side handles so they can be grabbed.
+        final boolean focusCenter = !showGuidelines();
+
+        // Note: corner-handles take precedence, then side-handles, then center.
+
+        if (isInCornerTargetZone(x, y, left, top, targetRadius)) {
+            return Handle.TOP_LEFT;
+        } else if (isInCornerTargetZone(x, y, right, top, targetRadius)) {
+            return Handle.TOP_RIGHT;
+        } else if (isInCornerTargetZone(x, y, left, bottom, targetRadius)) {
+            return Handle.BOTTOM_LEFT;
+        } else if (isInCornerTargetZone(x, y, right, bottom, targetRadius)) {
+            return Handle.BOTTOM_RIGHT;
+        } else if (focusCenter && isInCenterTargetZone(x, y, left, top, right, bottom)) {
+            return Handle.CENTER;
+        } else if (isInHorizontalTargetZone(x, y, left, right, top, targetRadius)) {
+            return Handle.TOP;
+        } else if (isInHorizontalTargetZone(x, y, left, right, bottom, targetRadius)) {
+            return Handle.BOTTOM;
+        } else if (isInVerticalTargetZone(x, y, left, top, bottom, targetRadius)) {
+            return Handle.LEFT;
+        } else if (isInVerticalTargetZone(x, y, right, top, bottom, targetRadius)) {
+            return Handle.RIGHT;
+        } else if (!focusCenter && isInCenterTargetZone(x, y, left, top, right, bottom)) {
+            return Handle.CENTER;
+        }
+        return null;
+    }
+
+    /**
+     * Starts dragging the handle at the given point, if any.
+     *
+     * @param x the x-coordinate of the touch point
+     * @param y the y-coordinate of the touch point
+     * @param targetRadius the target radius in pixels
+     * @return true if a handle was pressed
+     */
+    public boolean press(float x, float y, float targetRadius) {
+
+        mPressedHandle = getHandleAt(x, y, targetRadius);
+
+        if (mPressedHandle == null)
+            return false;
+
+        // Calculate the offset of the touch point from the precise location
+        // of the handle; it is maintained as we drag the handle.
+        setTouchOffset(mPressedHandle, x, y);
+        updateConstraints();
+        return true;
+    }
+
+    /**
+     * Drags the pressed handle to the given point, keeping the offset from
+     * where it was pressed.
+     *
+     * @return true if the window changed, i.e. a handle is pressed
+     */
+    public boolean drag(float x, float y) {
+
+        if (mPressedHandle == null)
+            return false;
+
+        // Adjust the coordinates for the finger position's offset (i.e. the
+        // distance from the initial touch to the precise handle location).
+        x += mTouchOffsetX;
+        y += mTouchOffsetY;
+
+        // Calculate the new crop window size/position.
+        if (mFixAspectRatio) {
+            mPressedHandle.updateCropWindow(x, y, mTargetAspectRatio, this);
+        } else {
+            mPressedHandle.updateCropWindow(x, y, this);
+        }
+        return true;
+    }
+
+    /**
+     * Releases the pressed handle.
+     *
+     * @return true if a handle was pressed
+     */
+    public boolean release() {
+
+        if (mPressedHandle == null)
+            return false;
+
+        mPressedHandle = null;
+        return true;
+    }
+
+    /**
+     * Gets the coordinate past which the given Edge snaps to its bound while a
+     * handle is dragged: towards the bound from here, it is set to the bound.
+     */
+    public float getSnapThreshold(Edge edge) {
+        return mSnapThresholds[edge.ordinal()];
+    }
+
+    /**
+     * Gets the furthest the given Edge may move towards its opposite Edge
+     * while a handle is dragged, keeping the window at least
+     * {@link Edge#MIN_CROP_LENGTH_PX} wide and tall.
+     */
+    public float getSizeLimit(Edge edge) {
+        return mSizeLimits[edge.ordinal()];
+    }
+
+    /**
+     * Gets the Handle that is being dragged; null if none.
+     */
+    public Handle getPressedHandle() {
+        return mPressedHandle;
+    }
+
+    @Override
+    public String toString() {
+        return "CropWindow[" + getLeft() + ", " + getTop() + ", " + getRight() + ", " + getBottom() + "]";
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Solves the constraints of each edge for the current window, bounds and
+     * aspect ratio, so that every move of the drag is a comparison against
+     * the snap threshold plus a clamp to the size limit.
+     */
+    private void updateConstraints() {
+
+        final float snapRadius = mSnapRadius;
+        mSnapThresholds[Edge.LEFT.ordinal()] = getBound(Edge.LEFT) + snapRadius;
+        mSnapThresholds[Edge.TOP.ordinal()] = getBound(Edge.TOP) + snapRadius;
+        mSnapThresholds[Edge.RIGHT.ordinal()] = getBound(Edge.RIGHT) - snapRadius;
+        mSnapThresholds[Edge.BOTTOM.ordinal()] = getBound(Edge.BOTTOM) - snapRadius;
+
+        // With a fixed aspect ratio the shorter side reaches the minimum
+        // length first, so the limit of the other side is scaled up.
+        final float aspectRatio = mFixAspectRatio ? mTargetAspectRatio : 1;
+        final float minWidth = Edge.MIN_CROP_LENGTH_PX * Math.max(1, aspectRatio);
+        final float minHeight = Edge.MIN_CROP_LENGTH_PX * Math.max(1, 1 / aspectRatio);
+        mSizeLimits[Edge.LEFT.ordinal()] = getRight() - minWidth;
+        mSizeLimits[Edge.TOP.ordinal()] = getBottom() - minHeight;
+        mSizeLimits[Edge.RIGHT.ordinal()] = getLeft() + minWidth;
+        mSizeLimits[Edge.BOTTOM.ordinal()] = getTop() + minHeight;
+    }
+
+    /**
+     * Re-solves the constraints of a drag in progress when the window is
+     * changed from outside the drag.
+     */
+    private void updateConstraintsIfPressed() {
+        if (mPressedHandle != null)
+            updateConstraints();
+    }
+
+    private void setTouchOffset(Handle handle, float x, float y) {
+
+        final float left = getLeft();
+        final float top = getTop();
+        final float right = getRight();
+        final float bottom = getBottom();
+
+        switch (handle) {
+            case TOP_LEFT:
+                mTouchOffsetX = left - x;
+                mTouchOffsetY = top - y;
+                break;
+            case TOP_RIGHT:
+                mTouchOffsetX = right - x;
+                mTouchOffsetY = top - y;
+                break;
+            case BOTTOM_LEFT:
+                mTouchOffsetX = left - x;
+                mTouchOffsetY = bottom - y;
+                break;
+            case BOTTOM_RIGHT:
+                mTouchOffsetX = right - x;
+                mTouchOffsetY = bottom - y;
+                break;
+            case LEFT:
+                mTouchOffsetX = left - x;
+                mTouchOffsetY = 0;
+                break;
+            case TOP:
+                mTouchOffsetX = 0;
+                mTouchOffsetY = top - y;
+                break;
+            case RIGHT:
+                mTouchOffsetX = right - x;
+                mTouchOffsetY = 0;
+                break;
+            case BOTTOM:
+                mTouchOffsetX = 0;
+                mTouchOffsetY = bottom - y;
+                break;
+            case CENTER:
+                mTouchOffsetX = (right + left) / 2 - x;
+                mTouchOffsetY = (top + bottom) / 2 - y;
+                break;
+        }
+    }
+
+    private static boolean isInCornerTargetZone(float x,
+                                                float y,
+                                                float handleX,
+                                                float handleY,
+                                                float targetRadius) {
+
+        return Math.abs(x - handleX) <= targetRadius && Math.abs(y - handleY) <= targetRadius;
+    }
+
+    private static boolean isInHorizontalTargetZone(float x,
+                                                    float y,
+                                                    float handleXStart,
+                                                    float handleXEnd,
+                                                    float handleY,
+                                                    float targetRadius) {
+
+        return x > handleXStart && x < handleXEnd && Math.abs(y - handleY) <= targetRadius;
+    }
+
+    private static boolean isInVerticalTargetZone(float x,
+                                                  float y,
+                                                  float handleX,
+                                                  float handleYStart,
+                                                  float handleYEnd,
+                                                  float targetRadius) {
+
+        return Math.abs(x - handleX) <= targetRadius && y > handleYStart && y < handleYEnd;
+    }
+
+    private static boolean isInCenterTargetZone(float x,
+                                                float y,
+                                                float left,
+                                                float top,
+                                                float right,
+                                                float bottom) {
+
+        return x > left && x < right && y > top && y < bottom;
+    }
+}
@@ -1,12 +1,12 @@
 package com.wan.cropper.cropwindow.edge;
 
-import android.graphics.Rect;
-import android.view.View;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.util.AspectRatioUtil;
 
 /**
- * Enum representing an edge in the crop window.
+ * Enum representing an edge in the crop window. The coordinates themselves
+ * are held by a {@link CropWindow}; every method operates on the window it is
+ * given.
  */
 public enum Edge {
 
@@ -22,513 +22,266 @@ public enum Edge {
     // becoming too small.
     public static final int MIN_CROP_LENGTH_PX = 40;
 
-    // Member Variables ////////////////////////////////////////////////////////
-
-    private float mCoordinate;
-
     // Public Methods //////////////////////////////////////////////////////////
 
     /**
      * Sets the coordinate of the Edge. The coordinate will represent the
      * x-coordinate for LEFT and RIGHT Edges and the y-coordinate for TOP and
      * BOTTOM edges.
-     * 
+     *
+     * @param window the crop window
      * @param coordinate the position of the edge
      */
-    public void setCoordinate(float coordinate) {
-        mCoordinate = coordinate;
+    public void setCoordinate(CropWindow window, float coordinate) {
+        window.setCoordinate(this, coordinate);
     }
 
     /**
      * Add the given number of pixels to the current coordinate position of this
      * Edge.
-     * 
+     *
+     * @param window the crop window
      * @param distance the number of pixels to add
      */
-    public void offset(float distance) {
-        mCoordinate += distance;
+    public void offset(CropWindow window, float distance) {
+        window.setCoordinate(this, window.getCoordinate(this) + distance);
     }
 
     /**
      * Gets the coordinate of the Edge
-     * 
+     *
+     * @param window the crop window
      * @return the Edge coordinate (x-coordinate for LEFT and RIGHT Edges and
      *         the y-coordinate for TOP and BOTTOM edges)
      */
-    public float getCoordinate() {
-        return mCoordinate;
+    public float getCoordinate(CropWindow window) {
+        return window.getCoordinate(this);
     }
 
     /**
      * Sets the Edge to the given x-y coordinate but also adjusting for snapping
-     * to the image bounds and parent view border constraints.
-     * 
+     * to the image bounds and parent view border constraints. The constraints
+     * are those solved by the window when the dragged handle was pressed, so
+     * this is a single comparison and clamp.
+     *
+     * @param window the crop window, which holds the constraints of the drag
      * @param x the x-coordinate
      * @param y the y-coordinate
-     * @param imageRect the bounding rectangle of the image
-     * @param imageSnapRadius the radius (in pixels) at which the edge should
-     *            snap to the image
      */
-    public void adjustCoordinate(float x, float y, Rect imageRect, float imageSnapRadius, float aspectRatio) {
+    public void adjustCoordinate(CropWindow window, float x, float y) {
 
+        final float snapThreshold = window.getSnapThreshold(this);
+        final float sizeLimit = window.getSizeLimit(this);
+
+        final float coordinate;
         switch (this) {
             case LEFT:
-                mCoordinate = adjustLeft(x, imageRect, imageSnapRadius, aspectRatio);
+                coordinate = x < snapThreshold ? window.getBound(this) : Math.min(x, sizeLimit);
                 break;
             case TOP:
-                mCoordinate = adjustTop(y, imageRect, imageSnapRadius, aspectRatio);
+                coordinate = y < snapThreshold ? window.getBound(this) : Math.min(y, sizeLimit);
                 break;
             case RIGHT:
-                mCoordinate = adjustRight(x, imageRect, imageSnapRadius, aspectRatio);
+                coordinate = x > snapThreshold ? window.getBound(this) : Math.max(x, sizeLimit);
                 break;
-            case BOTTOM:
-                mCoordinate = adjustBottom(y, imageRect, imageSnapRadius, aspectRatio);
+            default:
+                coordinate = y > snapThreshold ? window.getBound(this) : Math.max(y, sizeLimit);
                 break;
         }
+        window.setCoordinate(this, coordinate);
     }
-    
-
 
     /**
      * Adjusts this Edge position such that the resulting window will have the
      * given aspect ratio.
-     * 
+     *
+     * @param window the crop window
      * @param aspectRatio the aspect ratio to achieve
      */
-    public void adjustCoordinate(float aspectRatio) {
+    public void adjustCoordinate(CropWindow window, float aspectRatio) {
 
-        final float left = Edge.LEFT.getCoordinate();
-        final float top = Edge.TOP.getCoordinate();
-        final float right = Edge.RIGHT.getCoordinate();
-        final float bottom = Edge.BOTTOM.getCoordinate();
+        final float left = window.getLeft();
+        final float top = window.getTop();
+        final float right = window.getRight();
+        final float bottom = window.getBottom();
 
+        final float coordinate;
         switch (this) {
             case LEFT:
-                mCoordinate = AspectRatioUtil.calculateLeft(top, right, bottom, aspectRatio);
+                coordinate = AspectRatioUtil.calculateLeft(top, right, bottom, aspectRatio);
                 break;
             case TOP:
-                mCoordinate = AspectRatioUtil.calculateTop(left, right, bottom, aspectRatio);
+                coordinate = AspectRatioUtil.calculateTop(left, right, bottom, aspectRatio);
                 break;
             case RIGHT:
-                mCoordinate = AspectRatioUtil.calculateRight(left, top, bottom, aspectRatio);
+                coordinate = AspectRatioUtil.calculateRight(left, top, bottom, aspectRatio);
                 break;
-            case BOTTOM:
-                mCoordinate = AspectRatioUtil.calculateBottom(left, top, right, aspectRatio);
+            default:
+                coordinate = AspectRatioUtil.calculateBottom(left, top, right, aspectRatio);
                 break;
         }
+        window.setCoordinate(this, coordinate);
     }
 
     /**
      * Returns whether or not you can re-scale the image based on whether any edge would be out of bounds.
      * Checks all the edges for a possibility of jumping out of bounds.
-     * 
-     * @param Edge the Edge that is about to be expanded
-     * @param imageRect the rectangle of the picture
-     * @param aspectratio the desired aspectRatio of the picture.
-     * 
+     *
+     * @param window the crop window, which holds the image bounds
+     * @param edge the Edge that is about to be expanded
+     * @param aspectRatio the desired aspectRatio of the picture.
+     *
      * @return whether or not the new image would be out of bounds.
      */
-    public boolean isNewRectangleOutOfBounds(Edge edge, Rect imageRect, float aspectRatio) {
+    public boolean isNewRectangleOutOfBounds(CropWindow window, Edge edge, float aspectRatio) {
+
+        float offset = edge.snapOffset(window);
 
-        float offset = edge.snapOffset(imageRect);
-        
         switch (this) {
             case LEFT:
                 if (edge.equals(Edge.TOP)) {
-                    float top = imageRect.top;
-                    float bottom = Edge.BOTTOM.getCoordinate() - offset;
-                    float right = Edge.RIGHT.getCoordinate();
+                    float top = window.getBound(TOP);
+                    float bottom = window.getBottom() - offset;
+                    float right = window.getRight();
                     float left = AspectRatioUtil.calculateLeft(top, right, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
-                    
+
+                    return isOutOfBounds(window, top, left, bottom, right);
+
                 }
                 else if (edge.equals(Edge.BOTTOM)) {
-                    float bottom = imageRect.bottom;
-                    float top = Edge.TOP.getCoordinate() - offset;
-                    float right = Edge.RIGHT.getCoordinate();
+                    float bottom = window.getBound(BOTTOM);
+                    float top = window.getTop() - offset;
+                    float right = window.getRight();
                     float left = AspectRatioUtil.calculateLeft(top, right, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
+
+                    return isOutOfBounds(window, top, left, bottom, right);
                 }
                 break;
-                
+
             case TOP:
                 if (edge.equals(Edge.LEFT)) {
-                    float left = imageRect.left;
-                    float right = Edge.RIGHT.getCoordinate() - offset;
-                    float bottom = Edge.BOTTOM.getCoordinate();
+                    float left = window.getBound(LEFT);
+                    float right = window.getRight() - offset;
+                    float bottom = window.getBottom();
                     float top = AspectRatioUtil.calculateTop(left, right, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
-                    
+
+                    return isOutOfBounds(window, top, left, bottom, right);
+
                 }
                 else if (edge.equals(Edge.RIGHT)) {
-                    float right = imageRect.right;
-                    float left = Edge.LEFT.getCoordinate() - offset;
-                    float bottom = Edge.BOTTOM.getCoordinate();
+                    float right = window.getBound(RIGHT);
+                    float left = window.getLeft() - offset;
+                    float bottom = window.getBottom();
                     float top = AspectRatioUtil.calculateTop(left, right, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
+
+                    return isOutOfBounds(window, top, left, bottom, right);
                 }
-                break; 
-                
+                break;
+
             case RIGHT:
                 if (edge.equals(Edge.TOP)) {
-                    float top = imageRect.top;
-                    float bottom = Edge.BOTTOM.getCoordinate() - offset;
-                    float left = Edge.LEFT.getCoordinate();
+                    float top = window.getBound(TOP);
+                    float bottom = window.getBottom() - offset;
+                    float left = window.getLeft();
                     float right = AspectRatioUtil.calculateRight(left, top, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
-                    
+
+                    return isOutOfBounds(window, top, left, bottom, right);
+
                 }
                 else if (edge.equals(Edge.BOTTOM)) {
-                    float bottom = imageRect.bottom;
-                    float top = Edge.TOP.getCoordinate() - offset;
-                    float left = Edge.LEFT.getCoordinate();
+                    float bottom = window.getBound(BOTTOM);
+                    float top = window.getTop() - offset;
+                    float left = window.getLeft();
                     float right = AspectRatioUtil.calculateRight(left, top, bottom, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
+
+                    return isOutOfBounds(window, top, left, bottom, right);
                 }
                 break;
-                
-                
+
+
             case BOTTOM:
                 if (edge.equals(Edge.LEFT)) {
-                    float left = imageRect.left;
-                    float right = Edge.RIGHT.getCoordinate() - offset;
-                    float top = Edge.TOP.getCoordinate();
+                    float left = window.getBound(LEFT);
+                    float right = window.getRight() - offset;
+                    float top = window.getTop();
                     float bottom = AspectRatioUtil.calculateBottom(left, top, right, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
-                    
+
+                    return isOutOfBounds(window, top, left, bottom, right);
+
                 }
                 else if (edge.equals(Edge.RIGHT)) {
-                    float right = imageRect.right;
-                    float left = Edge.LEFT.getCoordinate() - offset;
-                    float top = Edge.TOP.getCoordinate();
+                    float right = window.getBound(RIGHT);
+                    float left = window.getLeft() - offset;
+                    float top = window.getTop();
                     float bottom = AspectRatioUtil.calculateBottom(left, top, right, aspectRatio);
-                    
-                    return isOutOfBounds(top, left, bottom, right, imageRect);
-                    
+
+                    return isOutOfBounds(window, top, left, bottom, right);
+
                 }
-                break; 
+                break;
         }
         return true;
     }
-    
+
    /**
     * Returns whether the new rectangle would be out of bounds.
-    * 
+    *
+    * @param window the crop window, which holds the image bounds
     * @param top
     * @param left
     * @param bottom
     * @param right
-    * @param imageRect the Image to be compared with.
     * @return whether it would be out of bounds
     */
-    private boolean isOutOfBounds(float top, float left, float bottom, float right, Rect imageRect) {
-        return (top < imageRect.top || left < imageRect.left || bottom > imageRect.bottom || right > imageRect.right);
+    private boolean isOutOfBounds(CropWindow window, float top, float left, float bottom, float right) {
+        return (top < window.getBound(TOP) || left < window.getBound(LEFT)
+                || bottom > window.getBound(BOTTOM) || right > window.getBound(RIGHT));
     }
 
     /**
-     * Snap this Edge to the given image boundaries.
-     * 
-     * @param imageRect the bounding rectangle of the image to snap to
+     * Snap this Edge to the image bounds of the window.
+     *
+     * @param window the crop window, which holds the image bounds
      * @return the amount (in pixels) that this coordinate was changed (i.e. the
      *         new coordinate minus the old coordinate value)
      */
-    public float snapToRect(Rect imageRect) {
-
-        final float oldCoordinate = mCoordinate;
+    public float snapToBounds(CropWindow window) {
 
-        switch (this) {
-            case LEFT:
-                mCoordinate = imageRect.left;
-                break;
-            case TOP:
-                mCoordinate = imageRect.top;
-                break;
-            case RIGHT:
-                mCoordinate = imageRect.right;
-                break;
-            case BOTTOM:
-                mCoordinate = imageRect.bottom;
-                break;
-        }
-
-        final float offset = mCoordinate - oldCoordinate;
+        final float offset = snapOffset(window);
+        window.setCoordinate(this, window.getBound(this));
         return offset;
     }
-    
+
     /**
-     * Returns the potential snap offset of snaptoRect, without changing the coordinate.
-     * 
-     * @param imageRect the bounding rectangle of the image to snap to
+     * Returns the potential snap offset of snapToBounds, without changing the coordinate.
+     *
+     * @param window the crop window, which holds the image bounds
      * @return the amount (in pixels) that this coordinate was changed (i.e. the
      *         new coordinate minus the old coordinate value)
      */
-    public float snapOffset(Rect imageRect) {
-
-        final float oldCoordinate = mCoordinate;
-        float newCoordinate = oldCoordinate;
-
-        switch (this) {
-            case LEFT:
-                newCoordinate = imageRect.left;
-                break;
-            case TOP:
-                newCoordinate = imageRect.top;
-                break;
-            case RIGHT:
-                newCoordinate = imageRect.right;
-                break;
-            case BOTTOM:
-                newCoordinate = imageRect.bottom;
-                break;
-        }
-
-        final float offset = newCoordinate - oldCoordinate;
-        return offset;
+    public float snapOffset(CropWindow window) {
+        return window.getBound(this) - window.getCoordinate(this);
     }
 
     /**
-     * Snap this Edge to the given View boundaries.
-     * 
-     * @param view the View to snap to
+     * Determines if this Edge is outside the inner margins of the image
+     * bounds. The margins come inside the actual frame by the snap radius of
+     * the window; therefore, determines if the point is outside the inner
+     * "margin" frame.
+     *
      */
-    public void snapToView(View view) {
+    public boolean isOutsideMargin(CropWindow window) {
 
-        switch (this) {
-            case LEFT:
-                mCoordinate = 0;
-                break;
-            case TOP:
-                mCoordinate = 0;
-                break;
-            case RIGHT:
-                mCoordinate = view.getWidth();
-                break;
-            case BOTTOM:
-                mCoordinate = view.getHeight();
-                break;
-        }
-    }
-
-    /**
-     * Gets the current width of the crop window.
-     */
-    public static float getWidth() {
-        return Edge.RIGHT.getCoordinate() - Edge.LEFT.getCoordinate();
-    }
-
-    /**
-     * Gets the current height of the crop window.
-     */
-    public static float getHeight() {
-        return Edge.BOTTOM.getCoordinate() - Edge.TOP.getCoordinate();
-    }
-
-    /**
-     * Determines if this Edge is outside the inner margins of the given bounding
-     * rectangle. The margins come inside the actual frame by SNAPRADIUS amount; 
-     * therefore, determines if the point is outside the inner "margin" frame.
-     * 
-     */
-    public boolean isOutsideMargin(Rect rect, float margin) {
-
-        boolean result = false;
+        final float coordinate = window.getCoordinate(this);
+        final float bound = window.getBound(this);
+        final float margin = window.getSnapRadius();
 
         switch (this) {
             case LEFT:
-                result = mCoordinate - rect.left < margin;
-                break;
-            case TOP:
-                result = mCoordinate - rect.top < margin;
-                break;
-            case RIGHT:
-                result = rect.right - mCoordinate < margin;
-                break;
-            case BOTTOM:
-                result = rect.bottom - mCoordinate < margin;
-                break;
-        }
-        return result;
-    }
-    
-    /**
-     * Determines if this Edge is outside the image frame of the given bounding
-     * rectangle.
-     */
-    public boolean isOutsideFrame(Rect rect) {
-
-        double margin = 0;
-        boolean result = false;
-
-        switch (this) {
-            case LEFT:
-                result = mCoordinate - rect.left < margin;
-                break;
             case TOP:
-                result = mCoordinate - rect.top < margin;
-                break;
-            case RIGHT:
-                result = rect.right - mCoordinate < margin;
-                break;
-            case BOTTOM:
-                result = rect.bottom - mCoordinate < margin;
-                break;
-        }
-        return result;
-    }
-
-
-    // Private Methods /////////////////////////////////////////////////////////
-
-    /**
-     * Get the resulting x-position of the left edge of the crop window given
-     * the handle's position and the image's bounding box and snap radius.
-     * 
-     * @param x the x-position that the left edge is dragged to
-     * @param imageRect the bounding box of the image that is being cropped
-     * @param imageSnapRadius the snap distance to the image edge (in pixels)
-     * @return the actual x-position of the left edge
-     */
-    private static float adjustLeft(float x, Rect imageRect, float imageSnapRadius, float aspectRatio) {
-
-        float resultX = x;
-
-        if (x - imageRect.left < imageSnapRadius)
-            resultX = imageRect.left;
-
-        else
-        {
-            // Select the minimum of the three possible values to use
-            float resultXHoriz = Float.POSITIVE_INFINITY;
-            float resultXVert = Float.POSITIVE_INFINITY;
-
-            // Checks if the window is too small horizontally
-            if (x >= Edge.RIGHT.getCoordinate() - MIN_CROP_LENGTH_PX)
-                resultXHoriz = Edge.RIGHT.getCoordinate() - MIN_CROP_LENGTH_PX;
-
-            // Checks if the window is too small vertically
-            if (((Edge.RIGHT.getCoordinate() - x) / aspectRatio) <= MIN_CROP_LENGTH_PX)
-                resultXVert = Edge.RIGHT.getCoordinate() - (MIN_CROP_LENGTH_PX * aspectRatio);
-
-            resultX = Math.min(resultX, Math.min(resultXHoriz, resultXVert));
+                return coordinate - bound < margin;
+            default:
+                return bound - coordinate < margin;
         }
-        return resultX;
-    }
-
-    /**
-     * Get the resulting x-position of the right edge of the crop window given
-     * the handle's position and the image's bounding box and snap radius.
-     * 
-     * @param x the x-position that the right edge is dragged to
-     * @param imageRect the bounding box of the image that is being cropped
-     * @param imageSnapRadius the snap distance to the image edge (in pixels)
-     * @return the actual x-position of the right edge
-     */
-    private static float adjustRight(float x, Rect imageRect, float imageSnapRadius, float aspectRatio) {
-
-        float resultX = x;
-
-        // If close to the edge
-        if (imageRect.right - x < imageSnapRadius)
-            resultX = imageRect.right;
-
-        else
-        {
-            // Select the maximum of the three possible values to use
-            float resultXHoriz = Float.NEGATIVE_INFINITY;
-            float resultXVert = Float.NEGATIVE_INFINITY;
-
-            // Checks if the window is too small horizontally
-            if (x <= Edge.LEFT.getCoordinate() + MIN_CROP_LENGTH_PX)
-                resultXHoriz = Edge.LEFT.getCoordinate() + MIN_CROP_LENGTH_PX;
-
-            // Checks if the window is too small vertically
-            if (((x - Edge.LEFT.getCoordinate()) / aspectRatio) <= MIN_CROP_LENGTH_PX) {
-                resultXVert = Edge.LEFT.getCoordinate() + (MIN_CROP_LENGTH_PX * aspectRatio);
-            }
-
-            resultX = Math.max(resultX, Math.max(resultXHoriz, resultXVert));
-
-        }
-
-        return resultX;
-    }
-
-    /**
-     * Get the resulting y-position of the top edge of the crop window given the
-     * handle's position and the image's bounding box and snap radius.
-     * 
-     * @param y the x-position that the top edge is dragged to
-     * @param imageRect the bounding box of the image that is being cropped
-     * @param imageSnapRadius the snap distance to the image edge (in pixels)
-     * @return the actual y-position of the top edge
-     */
-    private static float adjustTop(float y, Rect imageRect, float imageSnapRadius, float aspectRatio) {
-
-        float resultY = y;
-
-        if (y - imageRect.top < imageSnapRadius)
-            resultY = imageRect.top;
-
-        else
-        {
-            // Select the minimum of the three possible values to use
-            float resultYVert = Float.POSITIVE_INFINITY;
-            float resultYHoriz = Float.POSITIVE_INFINITY;
-
-            // Checks if the window is too small vertically
-            if (y >= Edge.BOTTOM.getCoordinate() - MIN_CROP_LENGTH_PX)
-                resultYHoriz = Edge.BOTTOM.getCoordinate() - MIN_CROP_LENGTH_PX;
-
-            // Checks if the window is too small horizontally
-            if (((Edge.BOTTOM.getCoordinate() - y) * aspectRatio) <= MIN_CROP_LENGTH_PX)
-                resultYVert = Edge.BOTTOM.getCoordinate() - (MIN_CROP_LENGTH_PX / aspectRatio);
-
-            resultY = Math.min(resultY, Math.min(resultYHoriz, resultYVert));
-
-        }
-
-        return resultY;
-    }
-
-    /**
-     * Get the resulting y-position of the bottom edge of the crop window given
-     * the handle's position and the image's bounding box and snap radius.
-     * 
-     * @param y the x-position that the bottom edge is dragged to
-     * @param imageRect the bounding box of the image that is being cropped
-     * @param imageSnapRadius the snap distance to the image edge (in pixels)
-     * @return the actual y-position of the bottom edge
-     */
-    private static float adjustBottom(float y, Rect imageRect, float imageSnapRadius, float aspectRatio) {
-
-        float resultY = y;
-
-        if (imageRect.bottom - y < imageSnapRadius)
-            resultY = imageRect.bottom;
-        else
-        {
-            // Select the maximum of the three possible values to use
-            float resultYVert = Float.NEGATIVE_INFINITY;
-            float resultYHoriz = Float.NEGATIVE_INFINITY;
-
-            // Checks if the window is too small vertically
-            if (y <= Edge.TOP.getCoordinate() + MIN_CROP_LENGTH_PX)
-                resultYVert = Edge.TOP.getCoordinate() + MIN_CROP_LENGTH_PX;
-
-            // Checks if the window is too small horizontally
-            if (((y - Edge.TOP.getCoordinate()) * aspectRatio) <= MIN_CROP_LENGTH_PX)
-                resultYHoriz = Edge.TOP.getCoordinate() + (MIN_CROP_LENGTH_PX / aspectRatio);
-
-            resultY = Math.max(resultY, Math.max(resultYHoriz, resultYVert));
-        }
-
-        return resultY;
     }
 }
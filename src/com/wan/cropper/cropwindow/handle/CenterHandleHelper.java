@@ -1,7 +1,6 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 
 class CenterHandleHelper extends HandleHelper {
@@ -13,13 +12,12 @@ class CenterHandleHelper extends HandleHelper {
     @Override
     void updateCropWindow(float x,
                           float y,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
-        float left = Edge.LEFT.getCoordinate();
-        float top = Edge.TOP.getCoordinate();
-        float right = Edge.RIGHT.getCoordinate();
-        float bottom = Edge.BOTTOM.getCoordinate();
+        float left = window.getLeft();
+        float top = window.getTop();
+        float right = window.getRight();
+        float bottom = window.getBottom();
 
         final float currentCenterX = (left + right) / 2;
         final float currentCenterY = (top + bottom) / 2;
@@ -28,27 +26,27 @@ class CenterHandleHelper extends HandleHelper {
         final float offsetY = y - currentCenterY;
 
         // Adjust the crop window.
-        Edge.LEFT.offset(offsetX);
-        Edge.TOP.offset(offsetY);
-        Edge.RIGHT.offset(offsetX);
-        Edge.BOTTOM.offset(offsetY);
+        Edge.LEFT.offset(window, offsetX);
+        Edge.TOP.offset(window, offsetY);
+        Edge.RIGHT.offset(window, offsetX);
+        Edge.BOTTOM.offset(window, offsetY);
 
         // Check if we have gone out of bounds on the sides, and fix.
-        if (Edge.LEFT.isOutsideMargin(imageRect, snapRadius)) {
-            final float offset = Edge.LEFT.snapToRect(imageRect);
-            Edge.RIGHT.offset(offset);
-        } else if (Edge.RIGHT.isOutsideMargin(imageRect, snapRadius)) {
-            final float offset = Edge.RIGHT.snapToRect(imageRect);
-            Edge.LEFT.offset(offset);
+        if (Edge.LEFT.isOutsideMargin(window)) {
+            final float offset = Edge.LEFT.snapToBounds(window);
+            Edge.RIGHT.offset(window, offset);
+        } else if (Edge.RIGHT.isOutsideMargin(window)) {
+            final float offset = Edge.RIGHT.snapToBounds(window);
+            Edge.LEFT.offset(window, offset);
         }
 
         // Check if we have gone out of bounds on the top or bottom, and fix.
-        if (Edge.TOP.isOutsideMargin(imageRect, snapRadius)) {
-            final float offset = Edge.TOP.snapToRect(imageRect);
-            Edge.BOTTOM.offset(offset);
-        } else if (Edge.BOTTOM.isOutsideMargin(imageRect, snapRadius)) {
-            final float offset = Edge.BOTTOM.snapToRect(imageRect);
-            Edge.TOP.offset(offset);
+        if (Edge.TOP.isOutsideMargin(window)) {
+            final float offset = Edge.TOP.snapToBounds(window);
+            Edge.BOTTOM.offset(window, offset);
+        } else if (Edge.BOTTOM.isOutsideMargin(window)) {
+            final float offset = Edge.BOTTOM.snapToBounds(window);
+            Edge.TOP.offset(window, offset);
         }
     }
 
@@ -56,9 +54,8 @@ class CenterHandleHelper extends HandleHelper {
     void updateCropWindow(float x,
                           float y,
                           float targetAspectRatio,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
-        updateCropWindow(x, y, imageRect, snapRadius);
+        updateCropWindow(x, y, window);
     }
 }
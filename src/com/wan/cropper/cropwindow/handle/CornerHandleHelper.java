@@ -1,7 +1,6 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 import com.wan.cropper.cropwindow.edge.EdgePair;
 
@@ -15,19 +14,18 @@ class CornerHandleHelper extends HandleHelper {
     void updateCropWindow(float x,
                           float y,
                           float targetAspectRatio,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
-        final EdgePair activeEdges = getActiveEdges(x, y, targetAspectRatio);
+        final EdgePair activeEdges = getActiveEdges(x, y, targetAspectRatio, window);
         final Edge primaryEdge = activeEdges.primary;
         final Edge secondaryEdge = activeEdges.secondary;
 
-        primaryEdge.adjustCoordinate(x, y, imageRect, snapRadius, targetAspectRatio);
-        secondaryEdge.adjustCoordinate(targetAspectRatio);
+        primaryEdge.adjustCoordinate(window, x, y);
+        secondaryEdge.adjustCoordinate(window, targetAspectRatio);
 
-        if (secondaryEdge.isOutsideMargin(imageRect, snapRadius)) {
-            secondaryEdge.snapToRect(imageRect);
-            primaryEdge.adjustCoordinate(targetAspectRatio);
+        if (secondaryEdge.isOutsideMargin(window)) {
+            secondaryEdge.snapToBounds(window);
+            primaryEdge.adjustCoordinate(window, targetAspectRatio);
         }
     }
 }
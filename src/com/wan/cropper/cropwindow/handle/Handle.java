@@ -1,7 +1,6 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 
 public enum Handle {
@@ -24,18 +23,16 @@ public enum Handle {
 
     public void updateCropWindow(float x,
                                  float y,
-                                 Rect imageRect,
-                                 float snapRadius) {
+                                 CropWindow window) {
 
-        mHelper.updateCropWindow(x, y, imageRect, snapRadius);
+        mHelper.updateCropWindow(x, y, window);
     }
 
     public void updateCropWindow(float x,
                                  float y,
                                  float targetAspectRatio,
-                                 Rect imageRect,
-                                 float snapRadius) {
+                                 CropWindow window) {
 
-        mHelper.updateCropWindow(x, y, targetAspectRatio, imageRect, snapRadius);
+        mHelper.updateCropWindow(x, y, targetAspectRatio, window);
     }
 }
@@ -1,25 +1,26 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 import com.wan.cropper.cropwindow.edge.EdgePair;
 import com.wan.cropper.util.AspectRatioUtil;
 
 abstract class HandleHelper {
 
-    private static final float UNFIXED_ASPECT_RATIO_CONSTANT = 1;
     private Edge mHorizontalEdge;
     private Edge mVerticalEdge;
 
-    // Save the Pair object as a member variable to avoid having to instantiate
-    // a new Object every time getActiveEdges() is called.
-    private EdgePair mActiveEdges;
+    // The possible orderings of the active edges, created once so that
+    // getActiveEdges() neither allocates nor mutates state shared between the
+    // crop windows using this (singleton) helper.
+    private final EdgePair mActiveEdges;
+    private final EdgePair mVerticalFirstEdges;
 
     HandleHelper(Edge horizontalEdge, Edge verticalEdge) {
         mHorizontalEdge = horizontalEdge;
         mVerticalEdge = verticalEdge;
         mActiveEdges = new EdgePair(mHorizontalEdge, mVerticalEdge);
+        mVerticalFirstEdges = new EdgePair(mVerticalEdge, mHorizontalEdge);
     }
 
     /**
@@ -27,25 +28,21 @@ abstract class HandleHelper {
      * 
      * @param x the new x-coordinate of this handle
      * @param y the new y-coordinate of this handle
-     * @param imageRect the bounding rectangle of the image
-     * @param parentView the parent View containing the image
-     * @param snapRadius the maximum distance (in pixels) at which the crop
-     *            window should snap to the image
+     * @param window the crop window to update
      */
     void updateCropWindow(float x,
                           float y,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
         final EdgePair activeEdges = getActiveEdges();
         final Edge primaryEdge = activeEdges.primary;
         final Edge secondaryEdge = activeEdges.secondary;
 
         if (primaryEdge != null)
-            primaryEdge.adjustCoordinate(x, y, imageRect, snapRadius, UNFIXED_ASPECT_RATIO_CONSTANT);
+            primaryEdge.adjustCoordinate(window, x, y);
 
         if (secondaryEdge != null)
-            secondaryEdge.adjustCoordinate(x, y, imageRect, snapRadius, UNFIXED_ASPECT_RATIO_CONSTANT);
+            secondaryEdge.adjustCoordinate(window, x, y);
     }
 
     /**
@@ -55,16 +52,12 @@ abstract class HandleHelper {
      * @param x the new x-coordinate of this handle
      * @param y the new y-coordinate of this handle
      * @param targetAspectRatio the aspect ratio to maintain
-     * @param imageRect the bounding rectangle of the image
-     * @param parentView the parent View containing the image
-     * @param snapRadius the maximum distance (in pixels) at which the crop
-     *            window should snap to the image
+     * @param window the crop window to update
      */
     abstract void updateCropWindow(float x,
                                    float y,
                                    float targetAspectRatio,
-                                   Rect imageRect,
-                                   float snapRadius);
+                                   CropWindow window);
 
     /**
      * Gets the Edges associated with this handle (i.e. the Edges that should be
@@ -86,22 +79,19 @@ abstract class HandleHelper {
      * @param x the x-coordinate of the touch point
      * @param y the y-coordinate of the touch point
      * @param targetAspectRatio the aspect ratio that we are maintaining
-     * @return the active edges as an ordered pair
+     * @param window the crop window being updated
+     * @return the active edges as an ordered pair; must not be modified
      */
-    EdgePair getActiveEdges(float x, float y, float targetAspectRatio) {
+    EdgePair getActiveEdges(float x, float y, float targetAspectRatio, CropWindow window) {
 
         // Calculate the aspect ratio if this handle were dragged to the given
         // x-y coordinate.
-        final float potentialAspectRatio = getAspectRatio(x, y);
+        final float potentialAspectRatio = getAspectRatio(x, y, window);
 
         // If the touched point is wider than the aspect ratio, then x
         // is the determining side. Else, y is the determining side.
         if (potentialAspectRatio > targetAspectRatio) {
-            mActiveEdges.primary = mVerticalEdge;
-            mActiveEdges.secondary = mHorizontalEdge;
-        } else {
-            mActiveEdges.primary = mHorizontalEdge;
-            mActiveEdges.secondary = mVerticalEdge;
+            return mVerticalFirstEdges;
         }
         return mActiveEdges;
     }
@@ -114,15 +104,16 @@ abstract class HandleHelper {
      * 
      * @param x the x-coordinate
      * @param y the y-coordinate
+     * @param window the crop window
      * @return the aspect ratio
      */
-    private float getAspectRatio(float x, float y) {
+    private float getAspectRatio(float x, float y, CropWindow window) {
 
         // Replace the active edge coordinate with the given touch coordinate.
-        final float left = (mVerticalEdge == Edge.LEFT) ? x : Edge.LEFT.getCoordinate();
-        final float top = (mHorizontalEdge == Edge.TOP) ? y : Edge.TOP.getCoordinate();
-        final float right = (mVerticalEdge == Edge.RIGHT) ? x : Edge.RIGHT.getCoordinate();
-        final float bottom = (mHorizontalEdge == Edge.BOTTOM) ? y : Edge.BOTTOM.getCoordinate();
+        final float left = (mVerticalEdge == Edge.LEFT) ? x : window.getLeft();
+        final float top = (mHorizontalEdge == Edge.TOP) ? y : window.getTop();
+        final float right = (mVerticalEdge == Edge.RIGHT) ? x : window.getRight();
+        final float bottom = (mHorizontalEdge == Edge.BOTTOM) ? y : window.getBottom();
 
         final float aspectRatio = AspectRatioUtil.calculateAspectRatio(left, top, right, bottom);
 
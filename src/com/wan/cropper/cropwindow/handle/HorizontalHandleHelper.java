@@ -1,7 +1,6 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 import com.wan.cropper.util.AspectRatioUtil;
 
@@ -22,16 +21,15 @@ class HorizontalHandleHelper extends HandleHelper {
     void updateCropWindow(float x,
                           float y,
                           float targetAspectRatio,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
         // Adjust this Edge accordingly.
-        mEdge.adjustCoordinate(x, y, imageRect, snapRadius, targetAspectRatio);
+        mEdge.adjustCoordinate(window, x, y);
 
-        float left = Edge.LEFT.getCoordinate();
-        float top = Edge.TOP.getCoordinate();
-        float right = Edge.RIGHT.getCoordinate();
-        float bottom = Edge.BOTTOM.getCoordinate();
+        float left = window.getLeft();
+        float top = window.getTop();
+        float right = window.getRight();
+        float bottom = window.getBottom();
 
         // After this Edge is moved, our crop window is now out of proportion.
         final float targetWidth = AspectRatioUtil.calculateWidth(top, bottom, targetAspectRatio);
@@ -44,24 +42,22 @@ class HorizontalHandleHelper extends HandleHelper {
         left -= halfDifference;
         right += halfDifference;
 
-        Edge.LEFT.setCoordinate(left);
-        Edge.RIGHT.setCoordinate(right);
+        Edge.LEFT.setCoordinate(window, left);
+        Edge.RIGHT.setCoordinate(window, right);
 
         // Check if we have gone out of bounds on the sides, and fix.
-        if (Edge.LEFT.isOutsideMargin(imageRect, snapRadius) && !mEdge.isNewRectangleOutOfBounds(Edge.LEFT,
-                                                                                                 imageRect,
-                                                                                                 targetAspectRatio)) {
-            final float offset = Edge.LEFT.snapToRect(imageRect);
-            Edge.RIGHT.offset(-offset);
-            mEdge.adjustCoordinate(targetAspectRatio);
+        if (Edge.LEFT.isOutsideMargin(window)
+            && !mEdge.isNewRectangleOutOfBounds(window, Edge.LEFT, targetAspectRatio)) {
+            final float offset = Edge.LEFT.snapToBounds(window);
+            Edge.RIGHT.offset(window, -offset);
+            mEdge.adjustCoordinate(window, targetAspectRatio);
 
         }
-        if (Edge.RIGHT.isOutsideMargin(imageRect, snapRadius) && !mEdge.isNewRectangleOutOfBounds(Edge.RIGHT,
-                                                                                                  imageRect,
-                                                                                                  targetAspectRatio)) {
-            final float offset = Edge.RIGHT.snapToRect(imageRect);
-            Edge.LEFT.offset(-offset);
-            mEdge.adjustCoordinate(targetAspectRatio);
+        if (Edge.RIGHT.isOutsideMargin(window)
+            && !mEdge.isNewRectangleOutOfBounds(window, Edge.RIGHT, targetAspectRatio)) {
+            final float offset = Edge.RIGHT.snapToBounds(window);
+            Edge.LEFT.offset(window, -offset);
+            mEdge.adjustCoordinate(window, targetAspectRatio);
         }
     }
 }
@@ -1,7 +1,6 @@
 package com.wan.cropper.cropwindow.handle;
 
-import android.graphics.Rect;
-
+import com.wan.cropper.cropwindow.CropWindow;
 import com.wan.cropper.cropwindow.edge.Edge;
 import com.wan.cropper.util.AspectRatioUtil;
 
@@ -21,16 +20,15 @@ class VerticalHandleHelper extends HandleHelper {
     void updateCropWindow(float x,
                           float y,
                           float targetAspectRatio,
-                          Rect imageRect,
-                          float snapRadius) {
+                          CropWindow window) {
 
         // Adjust this Edge accordingly.
-        mEdge.adjustCoordinate(x, y, imageRect, snapRadius, targetAspectRatio);
+        mEdge.adjustCoordinate(window, x, y);
 
-        float left = Edge.LEFT.getCoordinate();
-        float top = Edge.TOP.getCoordinate();
-        float right = Edge.RIGHT.getCoordinate();
-        float bottom = Edge.BOTTOM.getCoordinate();
+        float left = window.getLeft();
+        float top = window.getTop();
+        float right = window.getRight();
+        float bottom = window.getBottom();
 
         // After this Edge is moved, our crop window is now out of proportion.
         final float targetHeight = AspectRatioUtil.calculateHeight(left, right, targetAspectRatio);
@@ -43,23 +41,21 @@ class VerticalHandleHelper extends HandleHelper {
         top -= halfDifference;
         bottom += halfDifference;
 
-        Edge.TOP.setCoordinate(top);
-        Edge.BOTTOM.setCoordinate(bottom);
+        Edge.TOP.setCoordinate(window, top);
+        Edge.BOTTOM.setCoordinate(window, bottom);
 
         // Check if we have gone out of bounds on the top or bottom, and fix.
-        if (Edge.TOP.isOutsideMargin(imageRect, snapRadius) && !mEdge.isNewRectangleOutOfBounds(Edge.TOP,
-                                                                                                imageRect,
-                                                                                                targetAspectRatio)) {
-            final float offset = Edge.TOP.snapToRect(imageRect);
-            Edge.BOTTOM.offset(-offset);
-            mEdge.adjustCoordinate(targetAspectRatio);
+        if (Edge.TOP.isOutsideMargin(window)
+            && !mEdge.isNewRectangleOutOfBounds(window, Edge.TOP, targetAspectRatio)) {
+            final float offset = Edge.TOP.snapToBounds(window);
+            Edge.BOTTOM.offset(window, -offset);
+            mEdge.adjustCoordinate(window, targetAspectRatio);
         }
-        if (Edge.BOTTOM.isOutsideMargin(imageRect, snapRadius) && !mEdge.isNewRectangleOutOfBounds(Edge.BOTTOM,
-                                                                                                   imageRect,
-                                                                                                   targetAspectRatio)) {
-            final float offset = Edge.BOTTOM.snapToRect(imageRect);
-            Edge.TOP.offset(-offset);
-            mEdge.adjustCoordinate(targetAspectRatio);
+        if (Edge.BOTTOM.isOutsideMargin(window)
+            && !mEdge.isNewRectangleOutOfBounds(window, Edge.BOTTOM, targetAspectRatio)) {
+            final float offset = Edge.BOTTOM.snapToBounds(window);
+            Edge.TOP.offset(window, -offset);
+            mEdge.adjustCoordinate(window, targetAspectRatio);
         }
     }
 }
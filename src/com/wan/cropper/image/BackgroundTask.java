@@ -0,0 +1,181 @@
+package com.wan.cropper.image;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * A unit of work (decoding, cropping, encoding) that runs on a shared pool of
+ * background threads and delivers its result on the main thread. A cancelled
+ * task never delivers its result; it is handed to {@link #onCancelled} instead
+ * so that it can be freed. Once executed, a task gets exactly one of the
+ * callbacks, even if it is cancelled before it starts, so that it can hold
+ * on to resources until then.
+ *
+ * @param <T> the type of the result
+ */
+public abstract class BackgroundTask<T> implements Runnable {
+
+    // Decoding is memory bound, so running more than a couple of decodes at
+    // once only raises the peak heap usage.
+    private static final int THREAD_COUNT = 2;
+
+    private static ExecutorService sExecutor;
+    private static Handler sMainHandler;
+
+    private volatile boolean mCancelled;
+    private Future<?> mFuture;
+
+    // Set by whichever comes first: run() starting, or cancel() stopping the
+    // task before it starts. Only the winner reports the outcome.
+    private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+    /**
+     * Queues this task on the background pool. Must be called on the main
+     * thread.
+     *
+     * @return this task, so that it can be kept for cancellation
+     */
+    public final BackgroundTask<T> execute() {
+        mFuture = getExecutor().submit(this);
+        return this;
+    }
+
+    /**
+     * Cancels this task. If it has not started yet it will not run at all, and
+     * {@link #onCancelled} is called right away; otherwise its result is
+     * discarded. Must be called on the main thread.
+     */
+    public void cancel() {
+
+        if (mCancelled) {
+            return;
+        }
+        mCancelled = true;
+        if (mFuture != null) {
+            mFuture.cancel(false);
+            if (mClaimed.compareAndSet(false, true)) {
+                onCancelled(null);
+            }
+        }
+    }
+
+    /**
+     * Returns whether {@link #cancel()} has been called. Long running work may
+     * poll this to stop early.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public final void run() {
+
+        // Cancelled before it started; onCancelled() has been called.
+        if (!mClaimed.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (mCancelled) {
+            postResult(null, null);
+            return;
+        }
+
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        T result = null;
+        Exception error = null;
+        try {
+            result = doInBackground();
+        } catch (Exception e) {
+            error = e;
+        } catch (OutOfMemoryError e) {
+            error = new RuntimeException(e);
+        }
+
+        postResult(result, error);
+    }
+
+    // Protected Methods ///////////////////////////////////////////////////////
+
+    /**
+     * Does the work on a background thread.
+     *
+     * @return the result to deliver to {@link #onComplete}
+     * @throws Exception if the work failed; delivered to {@link #onFailed}
+     */
+    protected abstract T doInBackground() throws Exception;
+
+    /**
+     * Called on the main thread with the result of a task that was not
+     * cancelled.
+     */
+    protected abstract void onComplete(T result);
+
+    /**
+     * Called on the main thread when {@link #doInBackground()} threw.
+     */
+    protected void onFailed(Exception error) {
+    }
+
+    /**
+     * Called on the main thread instead of {@link #onComplete} when the task
+     * was cancelled, before or while it was running; the result may be null.
+     */
+    protected void onCancelled(T result) {
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Delivers the outcome of {@link #doInBackground()} on the main thread.
+     */
+    private void postResult(final T result, final Exception error) {
+
+        getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) {
+                    onCancelled(result);
+                } else if (error != null) {
+                    onFailed(error);
+                } else {
+                    onComplete(result);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "CropImageView #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    private static synchronized Handler getMainHandler() {
+
+        if (sMainHandler == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainHandler;
+    }
+}
@@ -0,0 +1,121 @@
+package com.wan.cropper.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * A reference-counted Bitmap, so that it can be shared by views, retained
+ * across a configuration change or read by a background task without being
+ * copied, and still be freed at a known point: when the last reference is
+ * released. Whoever holds a reference calls {@link #release()} exactly once
+ * when done with it; {@link #acquire()} takes another one.
+ * <p>
+ * A handle either owns its Bitmap, which then goes back to the pool (or is
+ * recycled) with the last reference, or merely wraps a Bitmap that belongs to
+ * someone else and is never recycled. All methods are thread safe.
+ */
+public final class BitmapHandle {
+
+    private final Bitmap mBitmap;
+    private final boolean mOwned;
+    private final BitmapPool mPool;
+
+    private int mRefCount = 1;
+
+    private BitmapHandle(Bitmap bitmap, boolean owned, BitmapPool pool) {
+
+        if (bitmap == null) {
+            throw new NullPointerException("bitmap == null");
+        }
+        mBitmap = bitmap;
+        mOwned = owned;
+        mPool = pool;
+    }
+
+    /**
+     * Takes ownership of a Bitmap. It is given to the pool, or recycled if
+     * there is none, once the reference returned here and all the ones
+     * acquired from it have been released.
+     *
+     * @param bitmap the Bitmap, which nobody else may use or recycle
+     * @param pool the pool to give the Bitmap to; may be null
+     * @return a handle holding one reference
+     */
+    public static BitmapHandle adopt(Bitmap bitmap, BitmapPool pool) {
+        return new BitmapHandle(bitmap, true, pool);
+    }
+
+    /**
+     * Wraps a Bitmap that stays owned by the caller; releasing the handle
+     * never recycles it.
+     *
+     * @param bitmap the Bitmap, which the caller must not recycle while the
+     *            handle is in use
+     * @return a handle holding one reference
+     */
+    public static BitmapHandle wrap(Bitmap bitmap) {
+        return new BitmapHandle(bitmap, false, null);
+    }
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    /**
+     * Gets the Bitmap. It may only be used while a reference is held.
+     *
+     * @throws IllegalStateException if the last reference has been released
+     */
+    public synchronized Bitmap get() {
+
+        if (mRefCount == 0) {
+            throw new IllegalStateException("The Bitmap has been released");
+        }
+        return mBitmap;
+    }
+
+    /**
+     * Takes another reference, to be released separately.
+     *
+     * @return this handle
+     * @throws IllegalStateException if the last reference has been released
+     */
+    public synchronized BitmapHandle acquire() {
+
+        if (mRefCount == 0) {
+            throw new IllegalStateException("The Bitmap has been released");
+        }
+        mRefCount++;
+        return this;
+    }
+
+    /**
+     * Gives up a reference. With the last one, an owned Bitmap goes back to
+     * the pool or is recycled.
+     *
+     * @throws IllegalStateException if every reference has been released
+     *             already
+     */
+    public void release() {
+
+        synchronized (this) {
+            if (mRefCount == 0) {
+                throw new IllegalStateException("The Bitmap has been released already");
+            }
+            if (--mRefCount > 0 || !mOwned) {
+                return;
+            }
+        }
+
+        if (mPool != null) {
+            mPool.put(mBitmap);
+        } else {
+            mBitmap.recycle();
+        }
+    }
+
+    /**
+     * Returns whether the Bitmap is recycled or given to the pool once the
+     * last reference is released.
+     */
+    public boolean isOwned() {
+        return mOwned;
+    }
+}
@@ -0,0 +1,295 @@
+package com.wan.cropper.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+/**
+ * A pool of Bitmaps that are no longer displayed, so that their memory can be
+ * reused for the next decode (through {@link android.graphics.BitmapFactory.Options#inBitmap}),
+ * rotation or crop instead of allocating a new multi-megabyte Bitmap each time.
+ * <p>
+ * Bitmaps are bucketed by their allocation size. From KitKat on, any pooled
+ * Bitmap that is large enough is reconfigured to the requested size; before
+ * that, only a Bitmap of exactly the requested size and config can be reused.
+ * The pool is bounded in bytes and evicts the least recently added Bitmaps.
+ * All methods are thread safe.
+ */
+public class BitmapPool {
+
+    // By default the shared pool may hold this fraction of the heap.
+    private static final int DEFAULT_POOL_DIVISOR = 8;
+
+    // Don't hand out a Bitmap more than this many times larger than needed;
+    // it would pin a lot of memory for a small image.
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static BitmapPool sDefaultPool;
+
+    private final int mMaxBytes;
+    private int mCurrentBytes;
+
+    // Pooled Bitmaps by allocation size, and all of them in insertion order.
+    // Bitmap does not override equals(), so the set compares by identity and
+    // finds or removes a pooled Bitmap in constant time.
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    private final LinkedHashSet<Bitmap> mInsertionOrder = new LinkedHashSet<Bitmap>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxBytes the maximum number of bytes of Bitmaps to keep
+     */
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the pool shared by all CropImageViews in the process.
+     */
+    public static synchronized BitmapPool getDefault() {
+
+        if (sDefaultPool == null) {
+            sDefaultPool = new BitmapPool((int) Math.min(Runtime.getRuntime().maxMemory() / DEFAULT_POOL_DIVISOR,
+                                                         Integer.MAX_VALUE));
+        }
+        return sDefaultPool;
+    }
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    /**
+     * Takes a Bitmap of the given size and config out of the pool. Its pixels
+     * are undefined; use {@link #getCleared} to draw into it.
+     *
+     * @return a mutable Bitmap of exactly the given size and config, or null if
+     *         none could be reused
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+
+        final int byteCount = getByteCount(width, height, config);
+        final Bitmap bitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? takeReconfigurable(width, height, config, byteCount)
+                : takeExactMatch(width, height, config, byteCount);
+
+        if (bitmap == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #get} but with the pixels cleared to transparent, ready to be
+     * drawn into.
+     */
+    public Bitmap getCleared(int width, int height, Bitmap.Config config) {
+
+        final Bitmap bitmap = get(width, height, config);
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Gets a Bitmap to use as {@link android.graphics.BitmapFactory.Options#inBitmap}
+     * for a decode with the given sample size. Before KitKat, reuse only works
+     * without sampling.
+     *
+     * @param width the width of the decoded Bitmap
+     * @param height the height of the decoded Bitmap
+     * @param inSampleSize the sample size of the decode
+     * @return a Bitmap to decode into, or null
+     */
+    public Bitmap getForDecode(int width, int height, int inSampleSize) {
+        return getForDecode(width, height, inSampleSize, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Gets a Bitmap to use as {@link android.graphics.BitmapFactory.Options#inBitmap}
+     * for a decode with the given sample size into the given config.
+     *
+     * @see #getForDecode(int, int, int)
+     */
+    public Bitmap getForDecode(int width, int height, int inSampleSize, Bitmap.Config config) {
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && inSampleSize != 1) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            return null;
+        }
+        return get(width, height, config);
+    }
+
+    /**
+     * Offers a Bitmap to the pool. The caller must not use it afterwards.
+     * Bitmaps that cannot be reused, or are larger than the whole pool, are
+     * recycled instead.
+     *
+     * @param bitmap the Bitmap to give up; may be null
+     */
+    public synchronized void put(Bitmap bitmap) {
+
+        if (bitmap == null || bitmap.isRecycled() || mInsertionOrder.contains(bitmap)) {
+            return;
+        }
+
+        final int byteCount = getAllocationByteCount(bitmap);
+        if (!bitmap.isMutable() || byteCount > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = mBuckets.get(byteCount);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(byteCount, bucket);
+        }
+        bucket.addLast(bitmap);
+        mInsertionOrder.add(bitmap);
+        mCurrentBytes += byteCount;
+        mPutCount++;
+
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Recycles every pooled Bitmap.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getPutCount() {
+        return mPutCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Gets the number of bytes of Bitmaps currently held by the pool.
+     */
+    public synchronized int getCurrentBytes() {
+        return mCurrentBytes;
+    }
+
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[hits=" + mHitCount + ", misses=" + mMissCount + ", puts=" + mPutCount
+               + ", evictions=" + mEvictionCount + ", bytes=" + mCurrentBytes + "/" + mMaxBytes + "]";
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private Bitmap takeReconfigurable(int width, int height, Bitmap.Config config, int byteCount) {
+
+        final Integer bucketSize = mBuckets.ceilingKey(byteCount);
+        if (bucketSize == null || bucketSize > byteCount * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+
+        final Bitmap bitmap = mBuckets.get(bucketSize).getFirst();
+        remove(bitmap, bucketSize);
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    private Bitmap takeExactMatch(int width, int height, Bitmap.Config config, int byteCount) {
+
+        final LinkedList<Bitmap> bucket = mBuckets.get(byteCount);
+        if (bucket == null) {
+            return null;
+        }
+
+        for (Bitmap bitmap : bucket) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                remove(bitmap, byteCount);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void remove(Bitmap bitmap, int byteCount) {
+
+        final LinkedList<Bitmap> bucket = mBuckets.get(byteCount);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(byteCount);
+        }
+
+        mInsertionOrder.remove(bitmap);
+        mCurrentBytes -= byteCount;
+    }
+
+    private void trimToSize(int maxBytes) {
+
+        final Iterator<Bitmap> iterator = mInsertionOrder.iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+
+            final Bitmap bitmap = iterator.next();
+            final int byteCount = getAllocationByteCount(bitmap);
+            iterator.remove();
+
+            final LinkedList<Bitmap> bucket = mBuckets.get(byteCount);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(byteCount);
+            }
+
+            mCurrentBytes -= byteCount;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    private static int getByteCount(int width, int height, Bitmap.Config config) {
+        return width * height * getBytesPerPixel(config);
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationByteCount(Bitmap bitmap) {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,258 @@
+package com.wan.cropper.image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+
+/**
+ * A re-openable handle to the original, encoded image that is being cropped.
+ * The CropImageView only keeps a subsampled Bitmap for display; everything
+ * that needs the real pixels goes back to this source instead.
+ * <p>
+ * A source is reference counted, like a {@link BitmapHandle}, so that a task
+ * still reading it is not cut off when the view moves on to another image.
+ * It is created holding one reference; whoever holds one calls
+ * {@link #release()} exactly once when done with it, and what the source
+ * holds on to is freed with the last one.
+ */
+public abstract class ImageSource {
+
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private int mRefCount = 1;
+
+    /**
+     * Opens a new stream positioned at the start of the encoded image. The
+     * caller is responsible for closing it.
+     *
+     * @return a fresh InputStream over the encoded image
+     * @throws IOException if the source can no longer be read
+     */
+    public abstract InputStream openStream() throws IOException;
+
+    /**
+     * Takes another reference, to be released separately.
+     *
+     * @return this source
+     * @throws IllegalStateException if the last reference has been released
+     */
+    public final synchronized ImageSource acquire() {
+
+        if (mRefCount == 0) {
+            throw new IllegalStateException("The source has been released");
+        }
+        mRefCount++;
+        return this;
+    }
+
+    /**
+     * Gives up a reference. With the last one, anything this source holds on
+     * to (e.g. a spooled temp file) is released, and the source must not be
+     * used afterwards.
+     *
+     * @throws IllegalStateException if every reference has been released
+     *             already
+     */
+    public final void release() {
+
+        synchronized (this) {
+            if (mRefCount == 0) {
+                throw new IllegalStateException("The source has been released already");
+            }
+            if (--mRefCount > 0) {
+                return;
+            }
+        }
+
+        onRelease();
+    }
+
+    // Protected Methods ///////////////////////////////////////////////////////
+
+    /**
+     * Called when the last reference has been released, to free anything the
+     * source holds on to.
+     */
+    protected void onRelease() {
+    }
+
+    // Factory Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Creates a source backed by a content, file or android.resource Uri.
+     */
+    public static ImageSource fromUri(Context context, Uri uri) {
+        return new UriSource(context, uri);
+    }
+
+    /**
+     * Creates a source backed by a file on disk.
+     */
+    public static ImageSource fromFile(File file) {
+        return new FileSource(file);
+    }
+
+    /**
+     * Creates a source backed by a drawable resource. The raw resource is read,
+     * so no density scaling is applied.
+     */
+    public static ImageSource fromResource(Resources resources, int resId) {
+        return new ResourceSource(resources, resId);
+    }
+
+    /**
+     * Creates a source from a one-shot stream. Since a stream cannot be
+     * rewound, it is spooled to the cache directory the first time the source
+     * is opened (i.e. on the loading thread), so that it can be opened again
+     * for the bounds pass, the display decode and the crop. The stream is
+     * closed once it has been copied.
+     *
+     * @param context the Context used to locate the cache directory
+     * @param stream the stream to read the encoded image from
+     * @return a source reading from the spooled copy
+     */
+    public static ImageSource fromStream(Context context, InputStream stream) {
+        return new StreamSource(context, stream);
+    }
+
+    /**
+     * Closes the given stream, ignoring any exception.
+     */
+    public static void closeQuietly(Closeable closeable) {
+
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful can be done here.
+        }
+    }
+
+    // Implementations /////////////////////////////////////////////////////////
+
+    private static class UriSource extends ImageSource {
+
+        private final Context mContext;
+        private final Uri mUri;
+
+        UriSource(Context context, Uri uri) {
+            mContext = context.getApplicationContext();
+            mUri = uri;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+
+            final InputStream stream = mContext.getContentResolver().openInputStream(mUri);
+            if (stream == null) {
+                throw new IOException("Unable to open " + mUri);
+            }
+            return stream;
+        }
+    }
+
+    private static class FileSource extends ImageSource {
+
+        private final File mFile;
+
+        FileSource(File file) {
+            mFile = file;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new FileInputStream(mFile);
+        }
+    }
+
+    private static class StreamSource extends ImageSource {
+
+        private final File mCacheDir;
+        private InputStream mStream;
+        private File mFile;
+
+        StreamSource(Context context, InputStream stream) {
+            mCacheDir = context.getCacheDir();
+            mStream = stream;
+        }
+
+        @Override
+        public synchronized InputStream openStream() throws IOException {
+
+            if (mFile == null) {
+                if (mStream == null) {
+                    throw new IOException("Stream source has been released");
+                }
+                mFile = spool(mStream, mCacheDir);
+                mStream = null;
+            }
+            return new FileInputStream(mFile);
+        }
+
+        @Override
+        protected synchronized void onRelease() {
+
+            closeQuietly(mStream);
+            mStream = null;
+
+            if (mFile != null) {
+                mFile.delete();
+                mFile = null;
+            }
+        }
+
+        /**
+         * Copies the stream into a new temp file and closes it.
+         */
+        private static File spool(InputStream stream, File directory) throws IOException {
+
+            final File file = File.createTempFile("crop", ".img", directory);
+            final OutputStream out = new FileOutputStream(file);
+
+            boolean copied = false;
+            try {
+                final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int count;
+                while ((count = stream.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                copied = true;
+            } finally {
+                closeQuietly(out);
+                closeQuietly(stream);
+                if (!copied) {
+                    file.delete();
+                }
+            }
+
+            return file;
+        }
+    }
+
+    private static class ResourceSource extends ImageSource {
+
+        private final Resources mResources;
+        private final int mResId;
+
+        ResourceSource(Resources resources, int resId) {
+            mResources = resources;
+            mResId = resId;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return mResources.openRawResource(mResId);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.wan.cropper.image;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.wan.cropper.util.BitmapUtil;
+
+/**
+ * Sizes Bitmaps to the memory of the device: the memory class the app is
+ * given, and how much of the heap is still free when the Bitmap is decoded.
+ * <p>
+ * The displayed image is first sampled to fit its view and the largest
+ * Bitmap that can be drawn. If it still does not fit its share of memory and
+ * is known to be opaque it is decoded as RGB_565, which halves it, and only
+ * then sampled further; other images stay ARGB_8888. A crop may have as many
+ * pixels as fit its share as ARGB_8888.
+ */
+public class MemorySizingPolicy implements SizingPolicy {
+
+    // The displayed image may take this fraction of the memory class; it
+    // shares the heap with the BitmapPool, the tiles and the app.
+    private static final int PREVIEW_MEMORY_DIVISOR = 4;
+
+    // A crop may take this fraction of the memory class.
+    private static final int CROP_MEMORY_DIVISOR = 2;
+
+    // Neither may take more than this fraction of the free heap.
+    private static final int HEADROOM_DIVISOR = 2;
+
+    private final long mMemoryClassBytes;
+
+    public MemorySizingPolicy(Context context) {
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mMemoryClassBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+    }
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    @Override
+    public void choosePreviewOptions(int srcWidth,
+                                     int srcHeight,
+                                     int reqWidth,
+                                     int reqHeight,
+                                     int maxWidth,
+                                     int maxHeight,
+                                     boolean opaque,
+                                     BitmapFactory.Options options) {
+
+        int inSampleSize = BitmapUtil.calculateInSampleSize(srcWidth, srcHeight, reqWidth, reqHeight);
+        while (srcWidth / inSampleSize > maxWidth || srcHeight / inSampleSize > maxHeight) {
+            inSampleSize *= 2;
+        }
+
+        final long budget = getBudget(PREVIEW_MEMORY_DIVISOR);
+        Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        if (opaque && getByteCount(srcWidth / inSampleSize, srcHeight / inSampleSize, config) > budget) {
+            config = Bitmap.Config.RGB_565;
+        }
+        while (inSampleSize < Math.max(srcWidth, srcHeight)
+               && getByteCount(srcWidth / inSampleSize, srcHeight / inSampleSize, config) > budget) {
+            inSampleSize *= 2;
+        }
+
+        options.inSampleSize = inSampleSize;
+        options.inPreferredConfig = config;
+    }
+
+    @Override
+    public long getMaxCropPixels() {
+        return getBudget(CROP_MEMORY_DIVISOR) / getByteCount(1, 1, Bitmap.Config.ARGB_8888);
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    /**
+     * Gets how many bytes a Bitmap may take: the given fraction of the memory
+     * class, but no more than a fraction of what is free right now.
+     */
+    private long getBudget(int memoryDivisor) {
+
+        final Runtime runtime = Runtime.getRuntime();
+        final long usedBytes = runtime.totalMemory() - runtime.freeMemory();
+        final long headroom = runtime.maxMemory() - usedBytes;
+
+        return Math.min(mMemoryClassBytes / memoryDivisor, headroom / HEADROOM_DIVISOR);
+    }
+
+    private static long getByteCount(int width, int height, Bitmap.Config config) {
+        return (long) width * height * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+    }
+}
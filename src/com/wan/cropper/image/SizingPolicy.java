@@ -0,0 +1,46 @@
+package com.wan.cropper.image;
+
+import android.graphics.BitmapFactory;
+
+/**
+ * Decides how big the Bitmaps of a CropImageView may get: the sample size and
+ * config of the displayed image, and the largest crop. The
+ * default is a {@link MemorySizingPolicy}; another implementation can, e.g.,
+ * pin the sizes down in a test regardless of the device.
+ * <p>
+ * The methods are called on background threads as well as on the main
+ * thread, so they must be thread safe.
+ */
+public interface SizingPolicy {
+
+    /**
+     * Chooses how to decode an image for display.
+     *
+     * @param srcWidth the full-resolution width of the image
+     * @param srcHeight the full-resolution height of the image
+     * @param reqWidth the width of the area the image is fitted into
+     * @param reqHeight the height of the area the image is fitted into
+     * @param maxWidth the width of the largest Bitmap that can be drawn
+     * @param maxHeight the height of the largest Bitmap that can be drawn
+     * @param opaque whether the image is known to have no transparency, e.g.
+     *            because it is a JPEG; only then may it be decoded as RGB_565
+     * @param options the options to set inSampleSize and inPreferredConfig of
+     */
+    void choosePreviewOptions(int srcWidth,
+                              int srcHeight,
+                              int reqWidth,
+                              int reqHeight,
+                              int maxWidth,
+                              int maxHeight,
+                              boolean opaque,
+                              BitmapFactory.Options options);
+
+    /**
+     * Gets how many pixels a crop whose size was not requested exactly may
+     * have. A bigger crop is scaled down to it, keeping its aspect ratio, as
+     * documented on CropImageView.getCroppedImage().
+     *
+     * @return the largest number of pixels; Long.MAX_VALUE for no limit
+     */
+    long getMaxCropPixels();
+}
@@ -0,0 +1,75 @@
+package com.wan.cropper.tile;
+
+import android.graphics.Rect;
+
+/**
+ * Identifies one tile of the image pyramid: the square at the given column and
+ * row of the image when it is sampled down by the given sample size.
+ * <p>
+ * Tiles used as keys are never changed; {@link #set(int, int, int)} is only
+ * for a key that is reused to look tiles up while drawing.
+ */
+final class Tile {
+
+    int sampleSize;
+    int column;
+    int row;
+
+    Tile() {
+    }
+
+    Tile(int sampleSize, int column, int row) {
+        set(sampleSize, column, row);
+    }
+
+    /**
+     * Makes this Tile identify another tile.
+     *
+     * @return this Tile
+     */
+    Tile set(int sampleSize, int column, int row) {
+        this.sampleSize = sampleSize;
+        this.column = column;
+        this.row = row;
+        return this;
+    }
+
+    /**
+     * Gets the area this tile covers in full-resolution image pixels.
+     *
+     * @param tileSize the size of a tile in sampled pixels
+     * @param imageWidth the full-resolution width of the image
+     * @param imageHeight the full-resolution height of the image
+     * @param outRect receives the area, clipped to the image
+     */
+    void getSourceRect(int tileSize, int imageWidth, int imageHeight, Rect outRect) {
+
+        final int sourceTileSize = tileSize * sampleSize;
+        final int left = column * sourceTileSize;
+        final int top = row * sourceTileSize;
+
+        outRect.set(left,
+                    top,
+                    Math.min(left + sourceTileSize, imageWidth),
+                    Math.min(top + sourceTileSize, imageHeight));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Tile)) {
+            return false;
+        }
+
+        final Tile other = (Tile) o;
+        return sampleSize == other.sampleSize && column == other.column && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return (sampleSize * 31 + column) * 31 + row;
+    }
+}
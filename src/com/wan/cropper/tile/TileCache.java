@@ -0,0 +1,49 @@
+package com.wan.cropper.tile;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import com.wan.cropper.image.BitmapPool;
+
+/**
+ * LRU cache of decoded tiles, bounded by the number of bytes their Bitmaps
+ * occupy rather than by the number of tiles. Evicted tiles go to the
+ * BitmapPool, or are recycled if there is none.
+ */
+class TileCache extends LruCache<Tile, Bitmap> {
+
+    private BitmapPool mPool;
+
+    /**
+     * @param maxBytes the maximum number of bytes of tile pixels to keep
+     * @param pool the pool to give evicted tiles to; may be null
+     */
+    TileCache(int maxBytes, BitmapPool pool) {
+        super(maxBytes);
+        mPool = pool;
+    }
+
+    void setBitmapPool(BitmapPool pool) {
+        mPool = pool;
+    }
+
+    @Override
+    protected int sizeOf(Tile tile, Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, Tile tile, Bitmap oldBitmap, Bitmap newBitmap) {
+
+        // Evicted tiles are only ever drawn on the main thread, which is also
+        // the one that evicts them, so they are no longer in use here.
+        if (oldBitmap == newBitmap) {
+            return;
+        }
+        if (mPool != null) {
+            mPool.put(oldBitmap);
+        } else {
+            oldBitmap.recycle();
+        }
+    }
+}
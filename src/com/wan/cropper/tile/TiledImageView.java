@@ -0,0 +1,426 @@
+package com.wan.cropper.tile;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+import com.wan.cropper.image.BackgroundTask;
+import com.wan.cropper.image.BitmapPool;
+import com.wan.cropper.image.ImageSource;
+
+/**
+ * Draws the visible part of a large image at the resolution it is displayed
+ * at. The image is treated as a pyramid of power-of-two sampled levels, each
+ * cut into square tiles; only the tiles that intersect the viewport at the
+ * level matching the current scale are decoded (with a BitmapRegionDecoder)
+ * and kept in a byte-bounded LRU cache.
+ * <p>
+ * This View is meant to be stacked on top of a low resolution preview of the
+ * whole image: levels that are no sharper than the preview are not drawn.
+ */
+public class TiledImageView extends View {
+
+    private static final String TAG = TiledImageView.class.getSimpleName();
+
+    // The size (in sampled pixels) of a tile at every level.
+    private static final int TILE_SIZE = 256;
+
+    // By default the tile cache may use this fraction of the heap.
+    private static final int DEFAULT_CACHE_DIVISOR = 8;
+
+    // Maps full-resolution image pixels to View pixels.
+    private final Matrix mImageMatrix = new Matrix();
+    private final Matrix mInverseMatrix = new Matrix();
+
+    private final RectF mVisibleRect = new RectF();
+    private final Rect mTileRect = new Rect();
+    private final Tile mLookupTile = new Tile();
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Map<Tile, TileTask> mPendingTiles = new HashMap<Tile, TileTask>();
+    private TileCache mTileCache;
+    private BitmapPool mBitmapPool = BitmapPool.getDefault();
+
+    private int mImageWidth;
+    private int mImageHeight;
+
+    // The sample size of the preview drawn underneath this View.
+    private int mBaseSampleSize;
+
+    // The decoder is shared with the TileTasks, which may still be decoding
+    // when the image is cleared; the last one to finish recycles it.
+    private DecoderHandle mDecoder;
+    private OpenDecoderTask mOpenDecoderTask;
+
+    public TiledImageView(Context context) {
+        super(context);
+        init();
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    // Public Methods //////////////////////////////////////////////////////////
+
+    /**
+     * Sets the image to draw tiles of. The region decoder is opened in the
+     * background.
+     *
+     * @param source the encoded image
+     * @param width the full-resolution width of the image
+     * @param height the full-resolution height of the image
+     * @param baseSampleSize the sample size of the preview drawn underneath;
+     *            tiles are only drawn at levels sharper than this
+     */
+    public void setImage(ImageSource source, int width, int height, int baseSampleSize) {
+
+        clear();
+
+        mImageWidth = width;
+        mImageHeight = height;
+        mBaseSampleSize = baseSampleSize;
+
+        mOpenDecoderTask = new OpenDecoderTask(source);
+        mOpenDecoderTask.execute();
+    }
+
+    /**
+     * Drops the image, all cached tiles and the region decoder.
+     */
+    public void clear() {
+
+        if (mOpenDecoderTask != null) {
+            mOpenDecoderTask.cancel();
+            mOpenDecoderTask = null;
+        }
+
+        cancelPendingTiles();
+        mTileCache.evictAll();
+
+        if (mDecoder != null) {
+            // Recycled once the TileTasks still decoding have finished.
+            mDecoder.release();
+            mDecoder = null;
+        }
+
+        invalidate();
+    }
+
+    /**
+     * Sets the transform from full-resolution image pixels to View pixels.
+     *
+     * @param matrix the matrix; copied
+     */
+    public void setImageMatrix(Matrix matrix) {
+        mImageMatrix.set(matrix);
+        invalidate();
+    }
+
+    /**
+     * Sets how many bytes of decoded tiles may be cached. Changing the size
+     * drops the cached tiles.
+     *
+     * @param maxBytes the byte budget of the tile cache
+     */
+    public void setTileCacheSize(int maxBytes) {
+        mTileCache.evictAll();
+        mTileCache = new TileCache(maxBytes, mBitmapPool);
+        invalidate();
+    }
+
+    /**
+     * Sets the pool that evicted tiles are given to.
+     *
+     * @param pool the pool; null to recycle them
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+        mTileCache.setBitmapPool(pool);
+    }
+
+    // View Methods ////////////////////////////////////////////////////////////
+
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelPendingTiles();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+
+        super.onDraw(canvas);
+
+        if (mDecoder == null) {
+            return;
+        }
+
+        // The preview underneath is already as sharp as this level.
+        final int sampleSize = getSampleSize();
+        if (sampleSize >= mBaseSampleSize) {
+            cancelPendingTiles();
+            return;
+        }
+
+        // Find the part of the image that is inside this View.
+        if (!mImageMatrix.invert(mInverseMatrix)) {
+            return;
+        }
+        mVisibleRect.set(0, 0, getWidth(), getHeight());
+        mInverseMatrix.mapRect(mVisibleRect);
+        if (!mVisibleRect.intersect(0, 0, mImageWidth, mImageHeight)) {
+            return;
+        }
+
+        final int sourceTileSize = TILE_SIZE * sampleSize;
+        final int firstColumn = (int) (mVisibleRect.left / sourceTileSize);
+        final int lastColumn = (int) Math.ceil(mVisibleRect.right / sourceTileSize) - 1;
+        final int firstRow = (int) (mVisibleRect.top / sourceTileSize);
+        final int lastRow = (int) Math.ceil(mVisibleRect.bottom / sourceTileSize) - 1;
+
+        cancelInvisibleTiles(sampleSize, firstColumn, lastColumn, firstRow, lastRow);
+
+        final int saveCount = canvas.save();
+        canvas.concat(mImageMatrix);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+
+                // Drawn on every frame of a zoom or pan, so the key is only
+                // allocated for tiles that need decoding.
+                final Tile tile = mLookupTile.set(sampleSize, column, row);
+                final Bitmap bitmap = mTileCache.get(tile);
+
+                if (bitmap != null) {
+                    tile.getSourceRect(TILE_SIZE, mImageWidth, mImageHeight, mTileRect);
+                    canvas.drawBitmap(bitmap, null, mTileRect, mTilePaint);
+                } else if (!mPendingTiles.containsKey(tile)) {
+                    requestTile(new Tile(sampleSize, column, row));
+                }
+            }
+        }
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    private void init() {
+        mTileCache = new TileCache((int) Math.min(Runtime.getRuntime().maxMemory() / DEFAULT_CACHE_DIVISOR,
+                                                  Integer.MAX_VALUE),
+                                   mBitmapPool);
+    }
+
+    /**
+     * Gets the pyramid level for the current scale: the largest power-of-two
+     * sample size at which a sampled pixel is still no bigger than a View
+     * pixel.
+     */
+    private int getSampleSize() {
+
+        final float scale = mImageMatrix.mapRadius(1f);
+
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void requestTile(Tile tile) {
+
+        final Rect region = new Rect();
+        tile.getSourceRect(TILE_SIZE, mImageWidth, mImageHeight, region);
+
+        final TileTask task = new TileTask(mDecoder.acquire(), tile, region);
+        mPendingTiles.put(tile, task);
+        task.execute();
+    }
+
+    /**
+     * Cancels the decodes of tiles that are not at the given level or have
+     * been scrolled out of the given range.
+     */
+    private void cancelInvisibleTiles(int sampleSize, int firstColumn, int lastColumn, int firstRow, int lastRow) {
+
+        // Saves the Iterator on the frames where nothing is loading.
+        if (mPendingTiles.isEmpty()) {
+            return;
+        }
+
+        final Iterator<Map.Entry<Tile, TileTask>> iterator = mPendingTiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+
+            final Map.Entry<Tile, TileTask> entry = iterator.next();
+            final Tile tile = entry.getKey();
+
+            if (tile.sampleSize != sampleSize
+                || tile.column < firstColumn || tile.column > lastColumn
+                || tile.row < firstRow || tile.row > lastRow) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void cancelPendingTiles() {
+
+        if (mPendingTiles.isEmpty()) {
+            return;
+        }
+
+        for (TileTask task : mPendingTiles.values()) {
+            task.cancel();
+        }
+        mPendingTiles.clear();
+    }
+
+    // Tasks ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Opens the region decoder for the image; this parses the whole header and
+     * can take a while for large images.
+     */
+    private class OpenDecoderTask extends BackgroundTask<BitmapRegionDecoder> {
+
+        // A reference of the task's own, released when it ends.
+        private final ImageSource mTaskSource;
+
+        OpenDecoderTask(ImageSource source) {
+            mTaskSource = source.acquire();
+        }
+
+        @Override
+        protected BitmapRegionDecoder doInBackground() throws Exception {
+
+            final InputStream stream = mTaskSource.openStream();
+            try {
+                return BitmapRegionDecoder.newInstance(stream, false);
+            } finally {
+                ImageSource.closeQuietly(stream);
+            }
+        }
+
+        @Override
+        protected void onComplete(BitmapRegionDecoder decoder) {
+            mTaskSource.release();
+            mOpenDecoderTask = null;
+            mDecoder = new DecoderHandle(decoder);
+            invalidate();
+        }
+
+        @Override
+        protected void onFailed(Exception error) {
+            mTaskSource.release();
+            // The preview is still shown; it just won't get any sharper.
+            Log.w(TAG, "Unable to open region decoder, tiles disabled", error);
+            mOpenDecoderTask = null;
+        }
+
+        @Override
+        protected void onCancelled(BitmapRegionDecoder decoder) {
+            mTaskSource.release();
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Decodes a single tile.
+     */
+    private class TileTask extends BackgroundTask<Bitmap> {
+
+        // A reference on the decoder, released when the task ends.
+        private final DecoderHandle mTaskDecoder;
+        private final Tile mTile;
+        private final Rect mRegion;
+
+        TileTask(DecoderHandle decoder, Tile tile, Rect region) {
+            mTaskDecoder = decoder;
+            mTile = tile;
+            mRegion = region;
+        }
+
+        @Override
+        protected Bitmap doInBackground() {
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = mTile.sampleSize;
+            return mTaskDecoder.decoder.decodeRegion(mRegion, options);
+        }
+
+        @Override
+        protected void onComplete(Bitmap bitmap) {
+
+            mTaskDecoder.release();
+            mPendingTiles.remove(mTile);
+
+            if (bitmap != null) {
+                mTileCache.put(mTile, bitmap);
+                invalidate();
+            }
+        }
+
+        @Override
+        protected void onFailed(Exception error) {
+            mTaskDecoder.release();
+            Log.w(TAG, "Unable to decode tile", error);
+            mPendingTiles.remove(mTile);
+        }
+
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            mTaskDecoder.release();
+            if (bitmap != null) {
+                if (mBitmapPool != null) {
+                    mBitmapPool.put(bitmap);
+                } else {
+                    bitmap.recycle();
+                }
+            }
+        }
+    }
+
+    /**
+     * A region decoder shared by the view and its TileTasks, recycled when
+     * the last of them lets go of it. Only used on the main thread; the tasks
+     * let go in their callbacks, once they are no longer decoding.
+     */
+    private static final class DecoderHandle {
+
+        final BitmapRegionDecoder decoder;
+        private int mRefCount = 1;
+
+        DecoderHandle(BitmapRegionDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        DecoderHandle acquire() {
+            mRefCount++;
+            return this;
+        }
+
+        void release() {
+            if (--mRefCount == 0) {
+                decoder.recycle();
+            }
+        }
+    }
+}
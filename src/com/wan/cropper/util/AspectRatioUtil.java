@@ -1,7 +1,5 @@
 package com.wan.cropper.util;
 
-import android.graphics.Rect;
-
 /**
  * Utility class for handling calculations involving a fixed aspect ratio.
  */
@@ -19,16 +17,6 @@ public class AspectRatioUtil {
         return aspectRatio;
     }
 
-    /**
-     * Calculates the aspect ratio given a rectangle.
-     */
-    public static float calculateAspectRatio(Rect rect) {
-
-        final float aspectRatio = (float) rect.width() / (float) rect.height();
-
-        return aspectRatio;
-    }
-
     /**
      * Calculates the x-coordinate of the left edge given the other sides of the
      * rectangle and an aspect ratio.
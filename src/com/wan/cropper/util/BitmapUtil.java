@@ -0,0 +1,409 @@
+package com.wan.cropper.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.wan.cropper.image.BitmapPool;
+import com.wan.cropper.image.ImageSource;
+
+/**
+ * Utility class for decoding Bitmaps from an ImageSource at no more than the
+ * size that is actually needed, and for encoding the result.
+ */
+public class BitmapUtil {
+
+    private static final int ENCODE_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Reads only the header of the encoded image to find its dimensions. No
+     * pixel memory is allocated.
+     *
+     * @param source the encoded image
+     * @return Options whose <code>outWidth</code>/<code>outHeight</code> hold
+     *         the full-resolution size of the image (-1 if it is not decodable)
+     * @throws IOException if the source could not be read
+     */
+    public static BitmapFactory.Options decodeBounds(ImageSource source) throws IOException {
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+
+        final InputStream stream = source.openStream();
+        try {
+            BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            ImageSource.closeQuietly(stream);
+        }
+
+        return options;
+    }
+
+    /**
+     * Calculates the largest power-of-two sample size for which the decoded
+     * Bitmap is still at least as large as the image will be displayed when
+     * fitted (center-inside) into the requested area.
+     *
+     * @param srcWidth the full-resolution width of the image
+     * @param srcHeight the full-resolution height of the image
+     * @param reqWidth the width of the area the image is fitted into
+     * @param reqHeight the height of the area the image is fitted into
+     * @return the sample size to pass to BitmapFactory (always >= 1)
+     */
+    public static int calculateInSampleSize(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return 1;
+        }
+
+        // A center-inside fit scales the image by the smaller of the two
+        // view-to-image ratios, so the image is shrunk by the larger of the
+        // two image-to-view ratios. Sampling by no more than that keeps the
+        // decoded Bitmap at or above the displayed size.
+        final float maxSample = Math.max((float) srcWidth / reqWidth, (float) srcHeight / reqHeight);
+
+        int inSampleSize = 1;
+        while (inSampleSize * 2 <= maxSample) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Calculates the largest power-of-two sample size for which the decoded
+     * Bitmap still covers the requested size in both dimensions, so that it
+     * only ever needs to be scaled down afterwards.
+     *
+     * @param srcWidth the width of the image (or region) to decode
+     * @param srcHeight the height of the image (or region) to decode
+     * @param reqWidth the width the result is scaled to
+     * @param reqHeight the height the result is scaled to
+     * @return the sample size to pass to BitmapFactory (always >= 1)
+     */
+    public static int calculateInSampleSizeToFill(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return 1;
+        }
+
+        final float maxSample = Math.min((float) srcWidth / reqWidth, (float) srcHeight / reqHeight);
+
+        int inSampleSize = 1;
+        while (inSampleSize * 2 <= maxSample) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Decodes the image subsampled so that it fits the requested area. Density
+     * scaling is disabled so that resources are not upscaled on high density
+     * screens.
+     *
+     * @param source the encoded image
+     * @param srcWidth the full-resolution width of the image
+     * @param srcHeight the full-resolution height of the image
+     * @param reqWidth the width of the area the image is fitted into
+     * @param reqHeight the height of the area the image is fitted into
+     * @param pool the pool to take a Bitmap to decode into from; may be null
+     * @return the decoded Bitmap, or null if the image could not be decoded
+     * @throws IOException if the source could not be read
+     */
+    public static Bitmap decodeSampledBitmap(ImageSource source,
+                                             int srcWidth,
+                                             int srcHeight,
+                                             int reqWidth,
+                                             int reqHeight,
+                                             BitmapPool pool) throws IOException {
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(srcWidth, srcHeight, reqWidth, reqHeight);
+        return decodeSampledBitmap(source, srcWidth, srcHeight, options, pool);
+    }
+
+    /**
+     * Decodes the image with the sample size and config already chosen in the
+     * options, e.g. by a {@link com.wan.cropper.image.SizingPolicy}. Density
+     * scaling is disabled so that resources are not upscaled on high density
+     * screens.
+     *
+     * @param source the encoded image
+     * @param srcWidth the full-resolution width of the image
+     * @param srcHeight the full-resolution height of the image
+     * @param options the options with inSampleSize and, optionally,
+     *            inPreferredConfig set
+     * @param pool the pool to take a Bitmap to decode into from; may be null
+     * @return the decoded Bitmap, or null if the image could not be decoded
+     * @throws IOException if the source could not be read
+     */
+    public static Bitmap decodeSampledBitmap(ImageSource source,
+                                             int srcWidth,
+                                             int srcHeight,
+                                             BitmapFactory.Options options,
+                                             BitmapPool pool) throws IOException {
+
+        options.inScaled = false;
+        options.inMutable = true;
+
+        if (pool != null) {
+            // Round up: a pooled Bitmap that is slightly too large is fine.
+            final int sampledWidth = (srcWidth + options.inSampleSize - 1) / options.inSampleSize;
+            final int sampledHeight = (srcHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = pool.getForDecode(sampledWidth,
+                                                 sampledHeight,
+                                                 options.inSampleSize,
+                                                 options.inPreferredConfig != null
+                                                         ? options.inPreferredConfig
+                                                         : Bitmap.Config.ARGB_8888);
+        }
+
+        try {
+            return decodeStream(source, options);
+        } catch (IllegalArgumentException e) {
+            // The decoder refused the pooled Bitmap (e.g. an unsupported
+            // format); decode into a new one instead.
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            return decodeStream(source, options);
+        }
+    }
+
+    /**
+     * Draws a Bitmap mirrored and rotated as described by
+     * {@link #getOrientationMatrix} into a new Bitmap, taken from the pool if
+     * possible. The source Bitmap is left untouched.
+     *
+     * @param bitmap the Bitmap to orient
+     * @param degrees the clockwise rotation, a multiple of 90
+     * @param flipHorizontally whether the Bitmap is mirrored before rotating
+     * @param pool the pool to take the oriented Bitmap from; may be null
+     * @return the oriented Bitmap
+     */
+    public static Bitmap orientBitmap(Bitmap bitmap, int degrees, boolean flipHorizontally, BitmapPool pool) {
+
+        final boolean sideways = degrees % 180 != 0;
+        return transformBitmap(bitmap,
+                               new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                               degrees,
+                               flipHorizontally,
+                               sideways ? bitmap.getHeight() : bitmap.getWidth(),
+                               sideways ? bitmap.getWidth() : bitmap.getHeight(),
+                               pool);
+    }
+
+    /**
+     * Crops, orients (as described by {@link #getOrientationMatrix}) and
+     * scales a Bitmap to the given size in a single filtered draw, into a new
+     * Bitmap taken from the pool if possible. No intermediate Bitmaps are
+     * allocated. The source Bitmap is left untouched.
+     *
+     * @param bitmap the Bitmap to draw from
+     * @param region the region of the Bitmap to draw; must lie inside it
+     * @param degrees the clockwise rotation, a multiple of 90
+     * @param flipHorizontally whether the region is mirrored before rotating
+     * @param width the width of the result, after orientation
+     * @param height the height of the result, after orientation
+     * @param pool the pool to take the result from; may be null
+     * @return the transformed Bitmap
+     */
+    public static Bitmap transformBitmap(Bitmap bitmap,
+                                         Rect region,
+                                         int degrees,
+                                         boolean flipHorizontally,
+                                         int width,
+                                         int height,
+                                         BitmapPool pool) {
+
+        final Matrix matrix = getOrientationMatrix(degrees, flipHorizontally, region.width(), region.height());
+        matrix.preTranslate(-region.left, -region.top);
+
+        final boolean sideways = degrees % 180 != 0;
+        matrix.postScale((float) width / (sideways ? region.height() : region.width()),
+                         (float) height / (sideways ? region.width() : region.height()));
+
+        final Bitmap transformedBitmap = obtainBitmap(width, height, getConfig(bitmap), pool);
+
+        // Pixels outside the region land outside the result and are clipped.
+        final Canvas canvas = new Canvas(transformedBitmap);
+        canvas.drawBitmap(bitmap, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+
+        return transformedBitmap;
+    }
+
+    /**
+     * Copies a region of a Bitmap into a new Bitmap, taken from the pool if
+     * possible.
+     *
+     * @param bitmap the Bitmap to crop
+     * @param region the region to copy; must lie inside the Bitmap
+     * @param pool the pool to take the cropped Bitmap from; may be null
+     * @return the cropped Bitmap
+     */
+    public static Bitmap cropBitmap(Bitmap bitmap, Rect region, BitmapPool pool) {
+
+        final Bitmap croppedBitmap = obtainBitmap(region.width(), region.height(), getConfig(bitmap), pool);
+
+        final Canvas canvas = new Canvas(croppedBitmap);
+        canvas.drawBitmap(bitmap, region, new Rect(0, 0, region.width(), region.height()), null);
+
+        return croppedBitmap;
+    }
+
+    /**
+     * Decodes a rectangular region of the image with a BitmapRegionDecoder.
+     * Only the pixels inside the region are allocated, so peak memory is
+     * proportional to the region rather than to the whole image.
+     *
+     * @param source the encoded image (JPEG or PNG)
+     * @param region the region to decode, in full-resolution image pixels
+     * @param inSampleSize the sample size to decode the region with
+     * @param config the config to decode the region into; null for the
+     *            decoder's choice
+     * @return the decoded region, or null if it could not be decoded
+     * @throws IOException if the source could not be read or its format is not
+     *             supported by BitmapRegionDecoder
+     */
+    public static Bitmap decodeRegion(ImageSource source,
+                                      Rect region,
+                                      int inSampleSize,
+                                      Bitmap.Config config) throws IOException {
+
+        final BitmapRegionDecoder decoder;
+        final InputStream stream = source.openStream();
+        try {
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        } finally {
+            ImageSource.closeQuietly(stream);
+        }
+
+        try {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = inSampleSize;
+            options.inPreferredConfig = config;
+            return decoder.decodeRegion(region, options);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Encodes a Bitmap into a stream and closes the stream. Call this off the
+     * main thread; encoding a large JPEG or PNG takes a while.
+     *
+     * @param bitmap the Bitmap to encode
+     * @param format the format to encode in
+     * @param quality the quality hint for lossy formats, 0 to 100
+     * @param stream the stream to write to; closed afterwards
+     * @throws IOException if the Bitmap could not be encoded or written
+     */
+    public static void compressBitmap(Bitmap bitmap,
+                                      Bitmap.CompressFormat format,
+                                      int quality,
+                                      OutputStream stream) throws IOException {
+
+        final OutputStream out = new BufferedOutputStream(stream, ENCODE_BUFFER_SIZE);
+        try {
+            if (!bitmap.compress(format, quality, out)) {
+                throw new IOException("Unable to encode image as " + format);
+            }
+            // Close here, rather than quietly, so that a failed flush is reported.
+            out.close();
+        } finally {
+            ImageSource.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Builds the transform from the pixels of an image to the pixels of the
+     * same image as it is displayed: first mirrored horizontally (if
+     * requested), then rotated clockwise, then moved back to the origin. Every
+     * EXIF orientation can be expressed this way.
+     *
+     * @param degrees the clockwise rotation, a multiple of 90
+     * @param flipHorizontally whether the image is mirrored before rotating
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return a new Matrix
+     */
+    public static Matrix getOrientationMatrix(int degrees, boolean flipHorizontally, int width, int height) {
+
+        final Matrix matrix = new Matrix();
+        getOrientationMatrix(degrees, flipHorizontally, width, height, matrix);
+        return matrix;
+    }
+
+    /**
+     * Like {@link #getOrientationMatrix(int, boolean, int, int)}, but sets the
+     * given Matrix instead of allocating one.
+     *
+     * @param outMatrix the Matrix to set
+     */
+    public static void getOrientationMatrix(int degrees,
+                                            boolean flipHorizontally,
+                                            int width,
+                                            int height,
+                                            Matrix outMatrix) {
+
+        outMatrix.reset();
+        if (flipHorizontally) {
+            outMatrix.setScale(-1, 1);
+        }
+        outMatrix.postRotate(degrees);
+
+        // Move the rotated image back to the origin. For multiples of 90
+        // degrees the corner that ends up top left follows from the signs of
+        // the cosine and sine alone.
+        final int normalized = ((degrees % 360) + 360) % 360;
+        final int cos = normalized == 0 ? 1 : normalized == 180 ? -1 : 0;
+        final int sin = normalized == 90 ? 1 : normalized == 270 ? -1 : 0;
+        final int flippedWidth = flipHorizontally ? -width : width;
+
+        final float left = Math.min(0, cos * flippedWidth) + Math.min(0, -sin * height);
+        final float top = Math.min(0, sin * flippedWidth) + Math.min(0, cos * height);
+        outMatrix.postTranslate(-left, -top);
+    }
+
+    // Private Methods /////////////////////////////////////////////////////////
+
+    private static Bitmap decodeStream(ImageSource source, BitmapFactory.Options options) throws IOException {
+
+        final InputStream stream = source.openStream();
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            ImageSource.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Takes a cleared Bitmap from the pool, or allocates a new one.
+     */
+    private static Bitmap obtainBitmap(int width, int height, Bitmap.Config config, BitmapPool pool) {
+
+        final Bitmap bitmap = pool != null ? pool.getCleared(width, height, config) : null;
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Gets the config of a Bitmap, which is null for some formats (e.g. GIF).
+     */
+    private static Bitmap.Config getConfig(Bitmap bitmap) {
+
+        final Bitmap.Config config = bitmap.getConfig();
+        return config != null ? config : Bitmap.Config.ARGB_8888;
+    }
+}
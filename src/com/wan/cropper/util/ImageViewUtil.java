@@ -25,7 +25,9 @@ public class ImageViewUtil {
         final int viewWidth = view.getWidth();
         final int viewHeight = view.getHeight();
 
-        return getBitmapRectCenterInsideHelper(bitmapWidth, bitmapHeight, viewWidth, viewHeight);
+        final Rect result = new Rect();
+        getBitmapRectCenterInsideHelper(bitmapWidth, bitmapHeight, viewWidth, viewHeight, result);
+        return result;
     }
 
     /**
@@ -43,7 +45,29 @@ public class ImageViewUtil {
                                                  int viewWidth,
                                                  int viewHeight)
     {
-        return getBitmapRectCenterInsideHelper(bitmapWidth, bitmapHeight, viewWidth, viewHeight);
+        final Rect result = new Rect();
+        getBitmapRectCenterInsideHelper(bitmapWidth, bitmapHeight, viewWidth, viewHeight, result);
+        return result;
+    }
+
+    /**
+     * Gets the rectangular position of a Bitmap if it were placed inside a View
+     * with scale type set to {@link ImageView#ScaleType #CENTER_INSIDE}, without
+     * allocating.
+     * 
+     * @param bitmapWidth the Bitmap's width
+     * @param bitmapHeight the Bitmap's height
+     * @param viewWidth the parent View's width
+     * @param viewHeight the parent View's height
+     * @param outRect the Rect to store the rectangular position of the Bitmap in
+     */
+    public static void getBitmapRectCenterInside(int bitmapWidth,
+                                                 int bitmapHeight,
+                                                 int viewWidth,
+                                                 int viewHeight,
+                                                 Rect outRect)
+    {
+        getBitmapRectCenterInsideHelper(bitmapWidth, bitmapHeight, viewWidth, viewHeight, outRect);
     }
 
     /**
@@ -55,12 +79,13 @@ public class ImageViewUtil {
      * @param bitmapHeight the Bitmap's height
      * @param viewWidth the parent View's width
      * @param viewHeight the parent View's height
-     * @return the rectangular position of the Bitmap
+     * @param outRect the Rect to store the rectangular position of the Bitmap in
      */
-    private static Rect getBitmapRectCenterInsideHelper(int bitmapWidth,
+    private static void getBitmapRectCenterInsideHelper(int bitmapWidth,
                                                         int bitmapHeight,
                                                         int viewWidth,
-                                                        int viewHeight) {
+                                                        int viewHeight,
+                                                        Rect outRect) {
         double resultWidth;
         double resultHeight;
         int resultX;
@@ -110,11 +135,9 @@ public class ImageViewUtil {
             resultY = (int) Math.round((viewHeight - resultHeight) / 2);
         }
 
-        final Rect result = new Rect(resultX,
-                                     resultY,
-                                     resultX + (int) Math.ceil(resultWidth),
-                                     resultY + (int) Math.ceil(resultHeight));
-
-        return result;
+        outRect.set(resultX,
+                    resultY,
+                    resultX + (int) Math.ceil(resultWidth),
+                    resultY + (int) Math.ceil(resultHeight));
     }
 }
@@ -0,0 +1,37 @@
+package com.wan.cropper.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Utility class to mark sections in systrace. The calls do nothing before
+ * Jelly Bean MR2, which has no {@link Trace}.
+ */
+public class TraceUtil {
+
+    /**
+     * Begins a section, which must be ended by {@link #endSection()} on the
+     * same thread.
+     *
+     * @param sectionName the name shown in systrace
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void beginSection(String sectionName) {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    /**
+     * Ends the last section begun on this thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void endSection() {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+}